@@ -0,0 +1,154 @@
+package ligo;
+
+import ligo.lang.antlr4.LigoLexer;
+import ligo.lang.antlr4.LigoParser;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchRunner {
+    private final Interpreter interpreter;
+    private long parseNanos;
+    private long executeNanos;
+    private int statementCount;
+    private int errorCount;
+
+    public BatchRunner(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    public void run(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            run(path.toString(), reader);
+        }
+    }
+
+    public void run(String sourceName, Reader reader) {
+        LigoLexer lexer = new LigoLexer(new UnbufferedCharStream(reader));
+        // Token text must be copied, since the characters aren't retained
+        lexer.setTokenFactory(new CommonTokenFactory(true));
+        LigoParser parser = new LigoParser(new UnbufferedTokenStream<CommonToken>(lexer));
+
+        BaseErrorListener errorListener = new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+                errorCount++;
+                System.err.println(sourceName + "(" + line + "," + charPositionInLine + "): " + msg);
+            }
+        };
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errorListener);
+        parser.removeErrorListeners();
+        parser.addErrorListener(errorListener);
+
+        // Top-level statements are run as soon as they are parsed and then dropped from the tree
+        parser.addParseListener(new ParseTreeListener() {
+            @Override
+            public void visitTerminal(TerminalNode node) { }
+
+            @Override
+            public void visitErrorNode(ErrorNode node) { }
+
+            @Override
+            public void enterEveryRule(ParserRuleContext ctx) { }
+
+            @Override
+            public void exitEveryRule(ParserRuleContext ctx) {
+                if(!(ctx instanceof LigoParser.StatementContext && ctx.getParent() instanceof LigoParser.ProgramContext))
+                    return;
+
+                long start = System.nanoTime();
+                if(interpreter.run((LigoParser.StatementContext)ctx))
+                    statementCount++;
+                executeNanos += System.nanoTime() - start;
+
+                ctx.getParent().children.remove(ctx);
+            }
+        });
+
+        long start = System.nanoTime();
+        long executeNanosBefore = executeNanos;
+        parser.program();
+        parseNanos += System.nanoTime() - start - (executeNanos - executeNanosBefore);
+    }
+
+    public void printTimings() {
+        System.err.println("statements: " + statementCount);
+        System.err.println("errors: " + errorCount);
+        System.err.println(String.format("parse: %.1f ms", parseNanos / 1000000.0));
+        System.err.println(String.format("execute: %.1f ms", executeNanos / 1000000.0));
+    }
+
+    public static void main(String[] args) throws IOException {
+        String imagePath = null;
+        String tracePath = null;
+        int width = 1280;
+        int height = 960;
+        List<Path> paths = new ArrayList<>();
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "--image":
+                    imagePath = args[++i];
+                    break;
+                case "--trace":
+                    tracePath = args[++i];
+                    break;
+                case "--width":
+                    width = Integer.parseInt(args[++i]);
+                    break;
+                case "--height":
+                    height = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    paths.add(Paths.get(args[i]));
+            }
+        }
+
+        if(paths.isEmpty()) {
+            System.err.println("Usage: ligo.BatchRunner [--image <file.png>] [--trace <file.folded>] [--width <pixels>] [--height <pixels>] <file.ligo>...");
+            System.exit(2);
+        }
+
+        Interpreter interpreter = new Interpreter();
+        BatchRunner runner = new BatchRunner(interpreter);
+        // A single image is rendered, as of time 0
+        interpreter.getFrameClock().setFrameRate(0);
+
+        if(tracePath != null)
+            Tracer.setEnabled(true);
+
+        for(Path path: paths)
+            runner.run(path);
+
+        runner.printTimings();
+
+        if(tracePath != null) {
+            try(Writer writer = Files.newBufferedWriter(Paths.get(tracePath))) {
+                Tracer.writeCollapsed(writer);
+            }
+        }
+
+        if(imagePath != null) {
+            long start = System.nanoTime();
+            HeadlessRenderer renderer = new HeadlessRenderer(interpreter, width, height);
+            ImageIO.write(renderer.render(), "png", Paths.get(imagePath).toFile());
+            System.err.println(String.format("render: %.1f ms", (System.nanoTime() - start) / 1000000.0));
+        }
+
+        if(runner.errorCount > 0)
+            System.exit(1);
+    }
+}
@@ -2,4 +2,9 @@ package ligo;
 
 public interface Cell<T> {
     Binding consume(CellConsumer<T> consumer);
+
+    // Like consume, but the cell doesn't keep the consumer alive; cells not supporting it hold on to it strongly
+    default Binding consumeWeakly(CellConsumer<T> consumer) {
+        return consume(consumer);
+    }
 }
@@ -1,6 +1,8 @@
 package ligo;
 
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.function.Supplier;
 
 public class ConstructorMap {
@@ -13,4 +15,49 @@ public class ConstructorMap {
     public Supplier<Cell> resolve(String name) {
         return constructors.get(name);
     }
+
+    // Instantiates when consumed, such that an instance is disposed along with the binding it was created for
+    public static class Construction implements Cell {
+        private final Supplier<Cell> constructor;
+        private Cell instance;
+
+        private Construction(Supplier<Cell> constructor) {
+            this.constructor = constructor;
+        }
+
+        @Override
+        public Binding consume(CellConsumer consumer) {
+            Cell instance = constructor.get();
+            this.instance = instance;
+            Binding binding = instance.consume(consumer);
+
+            return () -> {
+                binding.remove();
+                if(this.instance == instance)
+                    this.instance = null;
+            };
+        }
+
+        // The instance created for the latest consumption, if still consumed
+        public Cell getInstance() {
+            return instance;
+        }
+    }
+
+    public Construction construct(String name) {
+        return new Construction(constructors.get(name));
+    }
+
+    // The instances live until their bindings are removed
+    public List<Binding> instantiate(String name, int count, CellConsumer consumer) {
+        Cell instance = construct(name);
+        ArrayList<Binding> bindings = new ArrayList<>(count);
+
+        // Propagation settles once for all of the instances
+        Propagator.getInstance().transaction(() -> {
+            for(int i = 0; i < count; i++)
+                bindings.add(instance.consume(consumer));
+        });
+        return bindings;
+    }
 }
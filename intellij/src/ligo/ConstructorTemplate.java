@@ -0,0 +1,37 @@
+package ligo;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// A constructor body compiled once; instantiating only executes the compiled statements for a new dict
+public class ConstructorTemplate implements Supplier<Cell> {
+    // Statements receive the instance they are executed for at this index of their arguments
+    public static final int INSTANCE_INDEX = 0;
+
+    private final String name;
+    private final List<Consumer<Object[]>> statements;
+    private final Set<String> sharedKeys;
+
+    public ConstructorTemplate(String name, List<Consumer<Object[]>> statements, Set<String> sharedKeys) {
+        this.name = name;
+        this.statements = statements;
+        this.sharedKeys = sharedKeys;
+    }
+
+    @Override
+    public DictCell get() {
+        DictCell instance = new DictCell(name);
+        instance.setSharedKeys(sharedKeys);
+        Object[] args = new Object[]{instance};
+
+        // Cells of each instance can be propagated independently of other instances
+        Propagator.getInstance().partition(instance, () -> {
+            for(Consumer<Object[]> statement: statements)
+                statement.accept(args);
+        });
+
+        return instance;
+    }
+}
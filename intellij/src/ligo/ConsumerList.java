@@ -0,0 +1,136 @@
+package ligo;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConsumerList<T> {
+    // Entries added while metrics are enabled and not yet removed across all lists, which is the number of live
+    // bindings to cells
+    private static final LongAdder liveCount = new LongAdder();
+
+    public static long getLiveCount() {
+        return liveCount.sum();
+    }
+
+    private class Entry implements Binding {
+        private final CellConsumer<T> consumer;
+        private final WeakReference<CellConsumer<T>> weakConsumer;
+        private final long sequence;
+        // Whether the entry was added to the live count, which is kept only while metrics are enabled
+        private final boolean counted = Metrics.enabled;
+        private Entry previous;
+        private Entry next;
+        private boolean removed;
+
+        private Entry(CellConsumer<T> consumer, WeakReference<CellConsumer<T>> weakConsumer, long sequence) {
+            this.consumer = consumer;
+            this.weakConsumer = weakConsumer;
+            this.sequence = sequence;
+        }
+
+        private CellConsumer<T> getConsumer() {
+            return weakConsumer != null ? weakConsumer.get() : consumer;
+        }
+
+        @Override
+        public void remove() {
+            if(removed)
+                return;
+
+            removed = true;
+
+            if(previous != null)
+                previous.next = next;
+            else
+                first = next;
+
+            if(next != null)
+                next.previous = previous;
+            else
+                last = previous;
+
+            // next is kept, such that an ongoing iteration positioned here can continue
+            size--;
+            if(counted)
+                liveCount.decrement();
+        }
+    }
+
+    private Entry first;
+    private Entry last;
+    private int size;
+    private long sequence;
+
+    public Binding add(CellConsumer<T> consumer) {
+        return add(new Entry(consumer, null, sequence++));
+    }
+
+    // The consumer must be kept reachable elsewhere; once collected, its entry is dropped on the next notification
+    public Binding addWeak(CellConsumer<T> consumer) {
+        return add(new Entry(null, new WeakReference<>(consumer), sequence++));
+    }
+
+    private Entry add(Entry entry) {
+        if(last != null) {
+            last.next = entry;
+            entry.previous = last;
+        } else {
+            first = entry;
+        }
+
+        last = entry;
+        size++;
+        if(entry.counted)
+            liveCount.increment();
+
+        return entry;
+    }
+
+    public void next(T value) {
+        // Consumers added while notifying already got the value when consuming
+        next(value, sequence);
+    }
+
+    // Marks the consumers present now, which are those that may not have got a value given from now on
+    public long mark() {
+        return sequence;
+    }
+
+    // Notifies the consumers present as of the mark only
+    public void next(T value, long end) {
+        Entry entry = first;
+        int notified = 0;
+
+        while(entry != null && entry.sequence < end) {
+            if(!entry.removed) {
+                CellConsumer<T> consumer = entry.getConsumer();
+                if(consumer != null) {
+                    consumer.next(value);
+                    notified++;
+                } else {
+                    entry.remove();
+                }
+            }
+            entry = entry.next;
+        }
+
+        if(Metrics.enabled)
+            Metrics.notifications.add(notified);
+    }
+
+    // Drops the entries of collected weak consumers
+    public void expunge() {
+        for(Entry entry = first; entry != null; entry = entry.next) {
+            if(!entry.removed && entry.getConsumer() == null)
+                entry.remove();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -1,60 +1,156 @@
 package ligo;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Hashtable;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 public class DictCell implements Cell<Map<String, Object>> {
+    // Dicts created while metrics are enabled and not yet disposed
+    private static final LongAdder liveCount = new LongAdder();
+
+    public static long getLiveCount() {
+        return liveCount.sum();
+    }
+
     private String tag;
-    private ArrayList<CellConsumer> consumers = new ArrayList<>();
+    private ConsumerList<Map<String, Object>> consumers = new ConsumerList<>();
     private Hashtable<String, SlotCell> slots = new Hashtable<>();
+    // Whether the dict lives only as long as it's consumed, as opposed to roots such as the globals
+    private final boolean owned;
+    private final boolean counted = Metrics.enabled;
+    private boolean disposed;
 
     public DictCell(String tag) {
+        this(tag, true);
+    }
+
+    public DictCell(String tag, boolean owned) {
         this.tag = tag;
+        this.owned = owned;
+        if(counted)
+            liveCount.increment();
     }
 
     @Override
     public Binding consume(CellConsumer<Map<String, Object>> consumer) {
-        consumers.add(consumer);
+        return consume(consumers.add(consumer), consumer);
+    }
 
+    @Override
+    public Binding consumeWeakly(CellConsumer<Map<String, Object>> consumer) {
+        return consume(consumers.addWeak(consumer), consumer);
+    }
+
+    private Binding consume(Binding consumerBinding, CellConsumer<Map<String, Object>> consumer) {
+        Binding dependency = Propagator.getInstance().depend(versionNode);
         consumer.next(getVersion());
 
         return () -> {
-            consumers.remove(consumer);
+            consumerBinding.remove();
+            dependency.remove();
 
-            if(consumers.size() == 0) {
-                // What if there are consumers of slots?
-                bindings.forEach(x -> x.remove());
-            }
+            // The dict owns whatever was set up for it, so it goes along with its last consumer
+            if(consumers.isEmpty() && owned)
+                dispose();
         };
     }
 
+    // Tears down the bindings of the dict: renderer calls and slot values, and thereby the dicts held by the slots
+    public void dispose() {
+        if(disposed)
+            return;
+
+        disposed = true;
+        if(counted)
+            liveCount.decrement();
+
+        bindings.forEach(x -> x.remove());
+        bindings.clear();
+        slots.values().forEach(x -> x.release());
+        sharedCells = null;
+    }
+
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    // Version of map with slots that have values; shares structure with previous versions
+    private PersistentMap<String, Object> version = PersistentMap.empty();
+    // Consumers added since the version last changed got it when consuming
+    private long versionMark;
+
     private Map<String, Object> getVersion() {
-        // Get version of map with slots that have values
-        return slots.entrySet().stream().filter(x -> x.getValue().value != null).collect(Collectors.toMap(x -> x.getKey(), x -> x.getValue().value));
+        return version;
     }
 
+    // Consumers of the dict may live anywhere, so they are notified serially
+    private Propagator.Node versionNode = new Propagator.Node(null) {
+        @Override
+        protected void run() {
+            if(!consumers.isEmpty())
+                consumers.next(getVersion(), versionMark);
+        }
+
+        @Override
+        public String toString() {
+            return tag;
+        }
+    };
+
     private ArrayList<Binding> bindings = new ArrayList<>();
 
     public void addBinding(Binding binding) {
+        if(disposed) {
+            binding.remove();
+            return;
+        }
+
         bindings.add(binding);
     }
 
-    private class SlotCell implements Cell {
-        private ArrayList<CellConsumer> consumers = new ArrayList<>();
+    public int getBindingCount() {
+        return bindings.size();
+    }
+
+    private class SlotCell extends Propagator.Node implements Cell {
+        private final String id;
+        private ConsumerList consumers = new ConsumerList();
         private Cell valueCell;
         private Binding valueCellBinding;
         private Object value;
+        // Consumers added since the value last changed got it when consuming
+        private long valueMark;
+        // The version of the dict follows each of its slots
+        private final Binding versionDependency = Propagator.getInstance().subscribe(versionNode, () -> Propagator.getInstance().depend(this));
+
+        private SlotCell(String id) {
+            this.id = id;
+        }
 
         @Override
         public Binding consume(final CellConsumer consumer) {
-            consumers.add(consumer);
+            return consume(consumers.add(consumer), consumer);
+        }
+
+        @Override
+        public Binding consumeWeakly(final CellConsumer consumer) {
+            return consume(consumers.addWeak(consumer), consumer);
+        }
+
+        private Binding consume(Binding binding, CellConsumer consumer) {
+            Binding dependency = Propagator.getInstance().depend(this);
 
             if(value != null)
                 consumer.next(value);
 
-            return () -> consumers.remove(consumer);
+            return () -> {
+                binding.remove();
+                dependency.remove();
+            };
         }
 
         public void set(Cell valueCell) {
@@ -63,29 +159,77 @@ public class DictCell implements Cell<Map<String, Object>> {
 
             this.valueCell = valueCell;
 
-            valueCellBinding = valueCell.consume(value -> {
+            valueCellBinding = Propagator.getInstance().subscribe(this, () -> valueCell.consume(value -> {
+                if(Values.same(value, this.value)) {
+                    if(Metrics.enabled)
+                        Metrics.cutOffs.increment();
+                    return;
+                }
+
                 this.value = value;
-                update();
-            });
+                valueMark = consumers.mark();
+                version = value != null ? version.with(id, value) : version.without(id);
+                versionMark = DictCell.this.consumers.mark();
+                Propagator.getInstance().schedule(this);
+            }));
         }
 
-        private void update() {
-            consumers.forEach(x -> x.next(value));
-            if(DictCell.this.consumers.size() > 0) {
-                Map<String, Object> dictVersion = getVersion();
-                DictCell.this.consumers.forEach(x -> x.next(dictVersion));
+        private void release() {
+            if(valueCellBinding != null) {
+                valueCellBinding.remove();
+                valueCellBinding = null;
             }
+            versionDependency.remove();
+        }
+
+        @Override
+        protected void run() {
+            consumers.next(value, valueMark);
+            if(!DictCell.this.consumers.isEmpty())
+                Propagator.getInstance().schedule(versionNode);
         }
 
         public Cell getValueCell() {
             return valueCell;
         }
+
+        @Override
+        public String toString() {
+            return tag + "." + id;
+        }
+    }
+
+    private Set<String> sharedKeys = Collections.emptySet();
+    private Hashtable<String, SharedCell> sharedCells;
+
+    public void setSharedKeys(Set<String> sharedKeys) {
+        this.sharedKeys = sharedKeys;
+    }
+
+    // Structurally equal expressions evaluated within this dict share one cell, given their keys are known to recur
+    public Cell share(String key, Supplier<Cell> cellSupplier) {
+        if(!sharedKeys.contains(key))
+            return cellSupplier.get();
+
+        if(sharedCells == null)
+            sharedCells = new Hashtable<>();
+
+        SharedCell cell = sharedCells.get(key);
+        if(cell == null) {
+            cell = new SharedCell(cellSupplier.get());
+            sharedCells.put(key, cell);
+        }
+        return cell;
+    }
+
+    public int getSharedCellCount() {
+        return sharedCells != null ? sharedCells.size() : 0;
     }
 
     private SlotCell getSlot(String id) {
         SlotCell slot = slots.get(id);
         if(slot == null) {
-            slot = new SlotCell();
+            slot = new SlotCell(id);
             slots.put(id, slot);
         }
         return slot;
@@ -0,0 +1,503 @@
+package ligo;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public class DisplayList {
+    public static abstract class Command {
+        protected abstract void replay(Graphics graphics);
+
+        // Device space bounds touched when replayed, given the font in effect; null if unknown
+        protected Rectangle getBounds(Function<Font, FontMetrics> metrics, Font font) {
+            return null;
+        }
+    }
+
+    public static class SetColor extends Command {
+        public final Color color;
+
+        public SetColor(Color color) {
+            this.color = color;
+        }
+
+        @Override
+        protected void replay(Graphics graphics) {
+            graphics.setColor(color);
+        }
+    }
+
+    public static class SetFont extends Command {
+        public final Font font;
+
+        public SetFont(Font font) {
+            this.font = font;
+        }
+
+        @Override
+        protected void replay(Graphics graphics) {
+            graphics.setFont(font);
+        }
+    }
+
+    public static class FillRect extends Command {
+        public final Rectangle rectangle;
+
+        public FillRect(int x, int y, int width, int height) {
+            this.rectangle = new Rectangle(x, y, width, height);
+        }
+
+        @Override
+        protected void replay(Graphics graphics) {
+            graphics.fillRect(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
+        }
+
+        @Override
+        protected Rectangle getBounds(Function<Font, FontMetrics> metrics, Font font) {
+            return rectangle;
+        }
+    }
+
+    public static class FillRects extends Command {
+        private final ArrayList<Rectangle> rectangles = new ArrayList<>();
+        private Rectangle bounds;
+
+        private void add(Rectangle rectangle) {
+            if(rectangles.size() > 0) {
+                Rectangle last = rectangles.get(rectangles.size() - 1);
+                // Aligned rectangles that touch are drawn as one
+                if((last.x == rectangle.x && last.width == rectangle.width && last.y <= rectangle.y + rectangle.height && rectangle.y <= last.y + last.height) ||
+                    (last.y == rectangle.y && last.height == rectangle.height && last.x <= rectangle.x + rectangle.width && rectangle.x <= last.x + last.width)) {
+                    rectangles.set(rectangles.size() - 1, last.union(rectangle));
+                    bounds = bounds.union(rectangle);
+                    return;
+                }
+            }
+
+            rectangles.add(rectangle);
+            bounds = bounds != null ? bounds.union(rectangle) : rectangle;
+        }
+
+        @Override
+        protected void replay(Graphics graphics) {
+            for(Rectangle rectangle: rectangles)
+                graphics.fillRect(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
+        }
+
+        @Override
+        protected Rectangle getBounds(Function<Font, FontMetrics> metrics, Font font) {
+            return bounds;
+        }
+    }
+
+    public static class FillOval extends Command {
+        public final Rectangle rectangle;
+
+        public FillOval(int x, int y, int width, int height) {
+            this.rectangle = new Rectangle(x, y, width, height);
+        }
+
+        @Override
+        protected void replay(Graphics graphics) {
+            graphics.fillOval(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
+        }
+
+        @Override
+        protected Rectangle getBounds(Function<Font, FontMetrics> metrics, Font font) {
+            return new Rectangle(rectangle.x, rectangle.y, rectangle.width + 1, rectangle.height + 1);
+        }
+    }
+
+    public static class DrawString extends Command {
+        public final String string;
+        public final int x;
+        public final int y;
+
+        public DrawString(String string, int x, int y) {
+            this.string = string;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        protected void replay(Graphics graphics) {
+            graphics.drawString(string, x, y);
+        }
+
+        @Override
+        protected Rectangle getBounds(Function<Font, FontMetrics> metrics, Font font) {
+            FontMetrics fm = metrics.apply(font);
+            return new Rectangle(x, y - fm.getAscent(), fm.stringWidth(string), fm.getAscent() + fm.getDescent());
+        }
+    }
+
+    public static class Paint extends Command {
+        private final Consumer<Graphics> painter;
+
+        public Paint(Consumer<Graphics> painter) {
+            this.painter = painter;
+        }
+
+        @Override
+        protected void replay(Graphics graphics) {
+            painter.accept(graphics);
+        }
+    }
+
+    public static class Recorder {
+        private final ArrayList<Command> commands = new ArrayList<>();
+
+        public void setColor(Color color) {
+            commands.add(new SetColor(color));
+        }
+
+        public void setFont(Font font) {
+            commands.add(new SetFont(font));
+        }
+
+        public void fillRect(int x, int y, int width, int height) {
+            commands.add(new FillRect(x, y, width, height));
+        }
+
+        public void fillOval(int x, int y, int width, int height) {
+            commands.add(new FillOval(x, y, width, height));
+        }
+
+        public void drawString(String string, int x, int y) {
+            commands.add(new DrawString(string, x, y));
+        }
+
+        public void paint(Consumer<Graphics> painter) {
+            commands.add(new Paint(painter));
+        }
+
+        public List<Command> getCommands() {
+            return commands;
+        }
+    }
+
+    // Compiled commands of a range; immutable, such that snapshots share those of unchanged ranges
+    private static class Segment {
+        private final Command[] commands;
+        private final Rectangle[] bounds;
+        // Graphics state the segment was compiled for and the state it leaves behind
+        private final Color startColor;
+        private final Font startFont;
+        private final Color endColor;
+        private final Font endFont;
+        private final Rectangle area;
+        private final boolean unbounded;
+
+        private Segment(Command[] commands, Rectangle[] bounds, Color startColor, Font startFont, Color endColor, Font endFont, Rectangle area, boolean unbounded) {
+            this.commands = commands;
+            this.bounds = bounds;
+            this.startColor = startColor;
+            this.startFont = startFont;
+            this.endColor = endColor;
+            this.endFont = endFont;
+            this.area = area;
+            this.unbounded = unbounded;
+        }
+    }
+
+    public class Range {
+        private List<Command> commands = new ArrayList<>();
+        private Segment segment;
+        private Range previous;
+        private Range next;
+        private boolean dirty;
+        private boolean removed;
+
+        private Range() { }
+    }
+
+    private final Function<Font, FontMetrics> metrics;
+    private final Font defaultFont;
+    private Range first;
+    private Range last;
+    private int rangeCount;
+    private int commandCount;
+    private ArrayList<Range> dirtyRanges = new ArrayList<>();
+
+    public DisplayList(Function<Font, FontMetrics> metrics, Font defaultFont) {
+        this.metrics = metrics;
+        this.defaultFont = defaultFont;
+    }
+
+    public Range add() {
+        Range range = new Range();
+
+        if(last != null) {
+            last.next = range;
+            range.previous = last;
+        } else {
+            first = range;
+        }
+
+        last = range;
+        rangeCount++;
+        markDirty(range);
+
+        return range;
+    }
+
+    private void markDirty(Range range) {
+        if(!range.dirty) {
+            range.dirty = true;
+            dirtyRanges.add(range);
+        }
+        snapshot = null;
+    }
+
+    // Returns the region damaged by the change, or null if it has no bounds, as with opaque painters
+    public Rectangle set(Range range, List<Command> commands) {
+        range.commands = commands;
+        markDirty(range);
+
+        return compile();
+    }
+
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    public Rectangle remove(Range range) {
+        if(range.removed)
+            return new Rectangle();
+
+        range.removed = true;
+
+        if(range.previous != null)
+            range.previous.next = range.next;
+        else
+            first = range.next;
+
+        if(range.next != null)
+            range.next.previous = range.previous;
+        else
+            last = range.previous;
+
+        rangeCount--;
+        snapshot = null;
+
+        Segment segment = range.segment;
+        if(segment == null)
+            return compile();
+
+        commandCount -= segment.commands.length;
+
+        // The succeeding range starts out with another state now
+        if(range.next != null && !(Objects.equals(segment.startColor, segment.endColor) && Objects.equals(segment.startFont, segment.endFont)))
+            markDirty(range.next);
+
+        Rectangle damage = compile();
+        if(damage == null || segment.unbounded)
+            return null;
+        return union(damage, segment.area);
+    }
+
+    // Empty regions add nothing, rather than the point they are at
+    private static Rectangle union(Rectangle damage, Rectangle area) {
+        if(area == null || area.isEmpty())
+            return damage;
+        return damage.isEmpty() ? area : damage.union(area);
+    }
+
+    // Compiles dirty ranges anew, and their successors for as long as the state those start with changes; returns
+    // the region of what was compiled before and after, or null if some of it has no bounds
+    private Rectangle compile() {
+        Rectangle damage = new Rectangle();
+        boolean unbounded = false;
+
+        for(Range range: dirtyRanges) {
+            // Runs of dirty ranges are compiled from their first range on
+            if(range.removed || !range.dirty || (range.previous != null && range.previous.dirty))
+                continue;
+
+            Color color = range.previous != null ? range.previous.segment.endColor : null;
+            Font font = range.previous != null ? range.previous.segment.endFont : null;
+
+            for(Range current = range; current != null; current = current.next) {
+                Segment segment = current.segment;
+                if(!current.dirty && Objects.equals(segment.startColor, color) && Objects.equals(segment.startFont, font))
+                    break;
+
+                if(segment != null) {
+                    commandCount -= segment.commands.length;
+                    unbounded |= segment.unbounded;
+                    damage = union(damage, segment.area);
+                }
+                segment = compile(current.commands, color, font);
+                commandCount += segment.commands.length;
+                unbounded |= segment.unbounded;
+                damage = union(damage, segment.area);
+                current.segment = segment;
+                current.dirty = false;
+
+                color = segment.endColor;
+                font = segment.endFont;
+            }
+        }
+
+        dirtyRanges.clear();
+
+        return unbounded ? null : damage;
+    }
+
+    private Segment compile(List<Command> rangeCommands, Color startColor, Font startFont) {
+        ArrayList<Command> commands = new ArrayList<>();
+        ArrayList<Rectangle> commandBounds = new ArrayList<>();
+        Color color = startColor;
+        Font font = startFont;
+        Rectangle area = null;
+        boolean unbounded = false;
+        FillRects fillRects = null;
+
+        for(Command command: rangeCommands) {
+            if(command instanceof SetColor) {
+                Color commandColor = ((SetColor)command).color;
+                if(commandColor.equals(color))
+                    continue;
+                color = commandColor;
+                fillRects = null;
+                commands.add(command);
+                commandBounds.add(null);
+            } else if(command instanceof SetFont) {
+                Font commandFont = ((SetFont)command).font;
+                if(commandFont.equals(font))
+                    continue;
+                font = commandFont;
+                commands.add(command);
+                commandBounds.add(null);
+            } else {
+                Rectangle bounds = command.getBounds(metrics, font != null ? font : defaultFont);
+
+                if(bounds == null) {
+                    // Opaque painters may change any state
+                    unbounded = true;
+                    color = null;
+                    font = null;
+                    fillRects = null;
+                    commands.add(command);
+                    commandBounds.add(null);
+                    continue;
+                }
+
+                area = area != null ? area.union(bounds) : bounds;
+
+                if(command instanceof FillRect) {
+                    if(fillRects == null) {
+                        fillRects = new FillRects();
+                        commands.add(fillRects);
+                        commandBounds.add(null);
+                    }
+                    fillRects.add(((FillRect)command).rectangle);
+                } else {
+                    fillRects = null;
+                    commands.add(command);
+                    commandBounds.add(bounds);
+                }
+            }
+        }
+
+        // Bounds of merged fills are only known once all of them are added
+        for(int i = 0; i < commands.size(); i++) {
+            if(commands.get(i) instanceof FillRects)
+                commandBounds.set(i, ((FillRects)commands.get(i)).bounds);
+        }
+
+        return new Segment(
+            commands.toArray(new Command[commands.size()]), commandBounds.toArray(new Rectangle[commandBounds.size()]),
+            startColor, startFont, color, font, area, unbounded);
+    }
+
+    // Immutable view of the compiled commands, which can be painted while the list keeps changing
+    public class Snapshot {
+        private final Segment[] segments;
+        private final int commandCount;
+
+        private Snapshot() {
+            segments = new Segment[rangeCount];
+            int i = 0;
+            for(Range range = first; range != null; range = range.next)
+                segments[i++] = range.segment;
+            commandCount = DisplayList.this.commandCount;
+        }
+
+        public void paint(Graphics graphics, Rectangle clip) {
+            // Bounds of text preceding any font change are based on the default font
+            graphics.setFont(defaultFont);
+
+            if(Metrics.enabled) {
+                paintMeasured(graphics, clip);
+                return;
+            }
+
+            for(Segment segment: segments) {
+                Command[] commands = segment.commands;
+                Rectangle[] bounds = segment.bounds;
+
+                for(int i = 0; i < commands.length; i++) {
+                    if(bounds[i] == null || clip == null || clip.intersects(bounds[i]))
+                        commands[i].replay(graphics);
+                }
+            }
+        }
+
+        private void paintMeasured(Graphics graphics, Rectangle clip) {
+            Metrics.PaintEvent event = new Metrics.PaintEvent();
+            event.begin();
+            long paintStart = System.nanoTime();
+            int replayed = 0;
+
+            for(Segment segment: segments) {
+                Command[] commands = segment.commands;
+                Rectangle[] bounds = segment.bounds;
+
+                for(int i = 0; i < commands.length; i++) {
+                    if(bounds[i] == null || clip == null || clip.intersects(bounds[i])) {
+                        long start = System.nanoTime();
+                        commands[i].replay(graphics);
+                        Metrics.paint(commands[i].getClass(), System.nanoTime() - start);
+                        replayed++;
+                    }
+                }
+            }
+
+            Metrics.paints.increment();
+            Metrics.paintLatency.record(System.nanoTime() - paintStart);
+            event.end();
+            if(event.shouldCommit()) {
+                event.commands = commandCount;
+                event.replayed = replayed;
+                event.commit();
+            }
+        }
+    }
+
+    private Snapshot snapshot;
+
+    public Snapshot snapshot() {
+        if(!dirtyRanges.isEmpty())
+            compile();
+
+        if(snapshot == null)
+            snapshot = new Snapshot();
+
+        return snapshot;
+    }
+
+    public void paint(Graphics graphics, Rectangle clip) {
+        snapshot().paint(graphics, clip);
+    }
+
+    public int size() {
+        if(!dirtyRanges.isEmpty())
+            compile();
+
+        return commandCount;
+    }
+}
@@ -1,8 +1,14 @@
 package ligo;
 
+import java.lang.invoke.MethodHandle;
 import java.util.function.Function;
 
 public interface Expression {
     Cell createValueCell(Object[] args);
     Cell<Function<Object[], Object>> createFunctionCell(Object[] args);
+
+    // Compiled function body, see FunctionCompiler; null if the expression can't be compiled
+    default Cell<MethodHandle> createHandleCell(Object[] args) {
+        return null;
+    }
 }
@@ -0,0 +1,128 @@
+package ligo;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Source of time() and frame(); ticks at a target rate while consumed, skipping ticks while a frame is still in the making
+public class FrameClock {
+    public static final double DEFAULT_FRAME_RATE = Double.parseDouble(System.getProperty("ligo.frameRate", "60"));
+
+    private final ConsumerList<Double> timeConsumers = new ConsumerList<>();
+    private final ConsumerList<Long> frameConsumers = new ConsumerList<>();
+    private final long start = System.nanoTime();
+    private Double time = 0.0;
+    private Long frame = 0L;
+    // Ticks are propagated by the executor, which must be the thread owning the cells; without one, the clock stands still
+    private volatile Executor executor;
+    // Receives a callback to call once a frame is presented, after which the next tick may propagate
+    private Consumer<Runnable> frameListener = done -> done.run();
+    private double frameRate = DEFAULT_FRAME_RATE;
+    private ScheduledFuture<?> ticks;
+    private final AtomicBoolean framePending = new AtomicBoolean();
+    private final AtomicLong coalescedTicks = new AtomicLong();
+
+    private final Cell<Double> timeCell = consumer -> consume(timeConsumers, consumer, time);
+    private final Cell<Long> frameCell = consumer -> consume(frameConsumers, consumer, frame);
+
+    // Seconds since the clock was created, as of the latest tick
+    public Cell<Double> getTime() {
+        return timeCell;
+    }
+
+    // Number of ticks so far
+    public Cell<Long> getFrame() {
+        return frameCell;
+    }
+
+    private <T> Binding consume(ConsumerList<T> consumers, CellConsumer<T> consumer, T value) {
+        Binding binding = consumers.add(consumer);
+
+        consumer.next(value);
+        updateTicks();
+
+        return () -> {
+            binding.remove();
+            updateTicks();
+        };
+    }
+
+    // The clock only ticks while there is anybody to tick for
+    private synchronized void updateTicks() {
+        boolean consumed = !timeConsumers.isEmpty() || !frameConsumers.isEmpty();
+
+        boolean running = consumed && frameRate > 0 && executor != null;
+
+        if(running && ticks == null) {
+            long period = (long)(1000000000L / frameRate);
+            ticks = Scheduler.getTimer().scheduleAtFixedRate(this::fire, period, period, TimeUnit.NANOSECONDS);
+        } else if(!running && ticks != null) {
+            ticks.cancel(false);
+            ticks = null;
+        }
+    }
+
+    private void fire() {
+        if(!framePending.compareAndSet(false, true)) {
+            // The previous frame isn't done yet, so this tick is merged into the next one
+            coalescedTicks.incrementAndGet();
+            return;
+        }
+
+        executor.execute(this::tick);
+    }
+
+    public void tick() {
+        try {
+            time = (System.nanoTime() - start) / 1000000000.0;
+            frame = frame + 1;
+
+            // Everything driven by the clock settles as one turn
+            Propagator.getInstance().transaction(() -> {
+                timeConsumers.next(time);
+                frameConsumers.next(frame);
+            });
+        } catch (RuntimeException | Error e) {
+            framePending.set(false);
+            throw e;
+        }
+
+        frameListener.accept(() -> framePending.set(false));
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+        updateTicks();
+    }
+
+    public void setFrameListener(Consumer<Runnable> frameListener) {
+        this.frameListener = frameListener;
+    }
+
+    // Ticks per second; 0 stops the clock, such that time and frame stay as they are
+    public void setFrameRate(double frameRate) {
+        synchronized (this) {
+            this.frameRate = frameRate;
+            if(ticks != null) {
+                ticks.cancel(false);
+                ticks = null;
+            }
+        }
+        updateTicks();
+    }
+
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    public long getCoalescedTicks() {
+        return coalescedTicks.get();
+    }
+}
@@ -0,0 +1,200 @@
+package ligo;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Lowers function bodies into method handles of type (Object[])Object, where the array holds the locals
+public class FunctionCompiler {
+    private static final MethodType BODY_TYPE = MethodType.methodType(Object.class, Object[].class);
+    private static final MethodHandle LOCAL = MethodHandles.arrayElementGetter(Object[].class);
+    private static final MethodHandle ACCESS;
+    private static final MethodHandle DISPATCH;
+    private static final MethodHandle MATCHES;
+    private static final MethodHandle CALL_PURE;
+    private static final MethodHandle APPLY;
+    private static final MethodHandle LOCALS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ACCESS = lookup.findStatic(FunctionCompiler.class, "access",
+                MethodType.methodType(Object.class, String.class, Object.class));
+            DISPATCH = lookup.findVirtual(LinkedCallSite.class, "dispatch", BODY_TYPE);
+            MATCHES = lookup.findStatic(FunctionCompiler.class, "matches",
+                MethodType.methodType(boolean.class, FunctionMap.GenericFunction.class, int.class, Class[].class, Object[].class));
+            CALL_PURE = lookup.findStatic(FunctionCompiler.class, "callPure",
+                MethodType.methodType(Object.class, FunctionMap.GenericFunction.class, MethodHandle.class, Object[].class));
+            APPLY = lookup.findVirtual(Function.class, "apply", MethodType.methodType(Object.class, Object.class));
+            LOCALS = lookup.findStatic(Arrays.class, "copyOf", MethodType.methodType(Object[].class, Object[].class, int.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Bodies compiled from handles, which call sites invoke directly
+    private static class CompiledFunction implements Function<Object[], Object> {
+        private final MethodHandle body;
+
+        private CompiledFunction(MethodHandle body) {
+            this.body = body;
+        }
+
+        @Override
+        public Object apply(Object[] locals) {
+            try {
+                return (Object)body.invokeExact(locals);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    // Links the body of each overload it resolves behind a guard on the version of the generic function and the
+    // classes of the arguments; only calls for which no guard holds dispatch through the generic function
+    private static class LinkedCallSite extends MutableCallSite {
+        private final FunctionMap.GenericFunction genericFunction;
+        private final FunctionMap.CallSiteCache callSiteCache = new FunctionMap.CallSiteCache();
+        private final MethodHandle dispatch;
+        private int linkedVersion = -1;
+        private int linkCount;
+
+        private LinkedCallSite(FunctionMap.GenericFunction genericFunction) {
+            super(BODY_TYPE);
+            this.genericFunction = genericFunction;
+            dispatch = DISPATCH.bindTo(this);
+            setTarget(dispatch);
+        }
+
+        private Object dispatch(Object[] arguments) {
+            for(Object argument: arguments) {
+                if(argument == null)
+                    return null;
+            }
+
+            int version = genericFunction.getVersion();
+            FunctionMap.SpecificFunctionInfo function = callSiteCache.lookup(genericFunction, arguments);
+
+            if(function == null)
+                return null;
+
+            link(version, function, arguments);
+
+            return genericFunction.call(function, arguments);
+        }
+
+        private synchronized void link(int version, FunctionMap.SpecificFunctionInfo function, Object[] arguments) {
+            MethodHandle fallback = getTarget();
+            if(version != linkedVersion) {
+                // Guards of earlier versions never hold again
+                fallback = dispatch;
+                linkedVersion = version;
+                linkCount = 0;
+            }
+
+            if(linkCount == FunctionMap.CallSiteCache.POLYMORPHIC_LIMIT)
+                return;
+
+            Class<?>[] types = new Class<?>[arguments.length];
+            for(int i = 0; i < arguments.length; i++)
+                types[i] = arguments[i].getClass();
+
+            MethodHandle body = function.handle;
+            if(function.localCount != arguments.length)
+                body = MethodHandles.filterArguments(body, 0, MethodHandles.insertArguments(LOCALS, 1, function.localCount));
+            if(function.pure)
+                body = MethodHandles.insertArguments(CALL_PURE, 0, genericFunction, body);
+
+            MethodHandle test = MethodHandles.insertArguments(MATCHES, 0, genericFunction, version, types);
+            setTarget(MethodHandles.guardWithTest(test, body, fallback));
+            linkCount++;
+        }
+    }
+
+    public static MethodHandle constant(Object value) {
+        return MethodHandles.dropArguments(MethodHandles.constant(Object.class, value), 0, Object[].class);
+    }
+
+    public static MethodHandle local(int index) {
+        return MethodHandles.insertArguments(LOCAL, 1, index);
+    }
+
+    public static MethodHandle access(MethodHandle target, String id) {
+        return MethodHandles.filterReturnValue(target, MethodHandles.insertArguments(ACCESS, 0, id));
+    }
+
+    public static MethodHandle call(FunctionMap.GenericFunction genericFunction, MethodHandle[] arguments) {
+        // (Object...)Object linking the overloads it calls of its own
+        MethodHandle call = new LinkedCallSite(genericFunction).dynamicInvoker()
+            .asCollector(Object[].class, arguments.length);
+        // Each argument is computed from the same locals
+        MethodHandle filtered = MethodHandles.filterArguments(call, 0, arguments);
+        return MethodHandles.permuteArguments(filtered, BODY_TYPE, new int[arguments.length]);
+    }
+
+    public static Function<Object[], Object> toFunction(MethodHandle body) {
+        return new CompiledFunction(body.asType(BODY_TYPE));
+    }
+
+    // The handle a function was compiled from, if any
+    public static MethodHandle toHandle(Function<Object[], Object> function) {
+        if(function instanceof CompiledFunction)
+            return ((CompiledFunction)function).body;
+        return APPLY.bindTo(function).asType(BODY_TYPE);
+    }
+
+    // Combines the latest handles of the given cells whenever one of them changes
+    public static Cell<MethodHandle> combine(List<Cell<MethodHandle>> cells, Function<MethodHandle[], MethodHandle> combiner) {
+        return consumer -> {
+            MethodHandle[] handles = new MethodHandle[cells.size()];
+            ArrayList<Binding> bindings = new ArrayList<>();
+
+            for(int i = 0; i < cells.size(); i++) {
+                int index = i;
+                bindings.add(cells.get(i).consume(handle -> {
+                    handles[index] = handle;
+                    for(MethodHandle h: handles) {
+                        if(h == null)
+                            return;
+                    }
+                    consumer.next(combiner.apply(handles.clone()));
+                }));
+            }
+
+            return () -> bindings.forEach(x -> x.remove());
+        };
+    }
+
+    private static Object access(String id, Object target) {
+        return target instanceof Map ? ((Map<String, Object>)target).get(id) : null;
+    }
+
+    private static boolean matches(FunctionMap.GenericFunction genericFunction, int version, Class<?>[] types, Object[] arguments) {
+        if(genericFunction.getVersion() != version)
+            return false;
+
+        for(int i = 0; i < types.length; i++) {
+            if(arguments[i] == null || arguments[i].getClass() != types[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static Object callPure(FunctionMap.GenericFunction genericFunction, MethodHandle body, Object[] arguments) throws Throwable {
+        Object result = genericFunction.recall(arguments);
+        if(result == null) {
+            result = (Object)body.invokeExact(arguments);
+            genericFunction.remember(arguments, result);
+        }
+
+        return result;
+    }
+}
@@ -1,8 +1,11 @@
 package ligo;
 
+import java.lang.invoke.MethodHandle;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -37,52 +40,321 @@ public class FunctionMap {
     public static class SpecificFunctionInfo {
         public final int localCount;
         public final Function<Object[], Object> body;
+        // The body as a handle of type (Object[])Object, which call sites bind directly
+        public final MethodHandle handle;
+        // Results of pure functions depend on nothing but the arguments
+        public final boolean pure;
+        // Applied to the cells of the arguments instead of the body to values, where calls are over cells
+        public final Function<List<Cell>, Cell> cellOperator;
 
         public SpecificFunctionInfo(int localCount, Function<Object[], Object> body) {
+            this(localCount, body, false);
+        }
+
+        public SpecificFunctionInfo(int localCount, Function<Object[], Object> body, boolean pure) {
+            this(localCount, body, pure, null);
+        }
+
+        public SpecificFunctionInfo(int localCount, Function<Object[], Object> body, boolean pure, Function<List<Cell>, Cell> cellOperator) {
             this.localCount = localCount;
             this.body = body;
+            handle = FunctionCompiler.toHandle(body);
+            this.pure = pure;
+            this.cellOperator = cellOperator;
+        }
+
+        public Object apply(Object[] arguments) {
+            Object[] locals = arguments;
+            if(localCount != arguments.length) {
+                locals = new Object[localCount];
+                System.arraycopy(arguments, 0, locals, 0, arguments.length);
+            }
+
+            return body.apply(locals);
         }
     }
 
-    public static class GenericFunction implements Cell<Map<SpecificSelector, SpecificFunctionInfo>> {
+    public static class Memo {
+        public static final int DEFAULT_CAPACITY = Integer.getInteger("ligo.memo.capacity", 256);
+
+        private final LinkedHashMap<List<Object>, Object> results;
+        private long hits;
+        private long misses;
+
+        public Memo(int capacity) {
+            results = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        public synchronized Object get(Object[] arguments) {
+            Object result = results.get(Arrays.asList(arguments));
+            if(result != null)
+                hits++;
+            else
+                misses++;
+            return result;
+        }
+
+        public synchronized void put(Object[] arguments, Object result) {
+            // Call sites reuse their argument arrays
+            results.put(Arrays.asList(arguments.clone()), result);
+        }
+
+        public synchronized void clear() {
+            results.clear();
+        }
+
+        public synchronized int size() {
+            return results.size();
+        }
+
+        public synchronized long getHits() {
+            return hits;
+        }
+
+        public synchronized long getMisses() {
+            return misses;
+        }
+    }
+
+    public static class GenericFunction implements Cell<GenericFunction> {
         private Hashtable<SpecificSelector, SpecificFunctionInfo> applicableSpecificFunctions = new Hashtable<>();
-        private ArrayList<CellConsumer<Map<SpecificSelector, SpecificFunctionInfo>>> consumers = new ArrayList<>();
+        private Hashtable<SpecificSelector, SpecificFunctionInfo> resolutions = new Hashtable<>();
+        private ConsumerList<GenericFunction> consumers = new ConsumerList<>();
+        private int version;
+        private Memo memo = new Memo(Memo.DEFAULT_CAPACITY);
+        // Looked up once per version, as call sites creating cells ask for it every time
+        private Function<List<Cell>, Cell> cellOperator;
+        private volatile boolean cellOperatorResolved;
+        // Whether call sites withhold results that are the same as their previous one
+        private volatile boolean distinct = true;
 
         public void define(Class<?>[] parameterTypes, SpecificFunctionInfo genericFunction) {
             SpecificSelector specificSelector = new SpecificSelector(parameterTypes);
             applicableSpecificFunctions.put(specificSelector, genericFunction);
+            // Call sites compare against the version instead of receiving a copy of the functions
+            version++;
+            resolutions.clear();
+            cellOperatorResolved = false;
+            memo.clear();
             update();
         }
 
+        // Calls a function resolved from this generic function, reusing earlier results of pure functions
+        public Object call(SpecificFunctionInfo function, Object[] arguments) {
+            if(!function.pure)
+                return function.apply(arguments);
+
+            Object result = recall(arguments);
+            if(result == null) {
+                result = function.apply(arguments);
+                remember(arguments, result);
+            }
+
+            return result;
+        }
+
+        // Earlier result of a pure function for the arguments, if any
+        public Object recall(Object[] arguments) {
+            Object result = memo.get(arguments);
+            if(Metrics.enabled)
+                (result != null ? Metrics.memoHits : Metrics.memoMisses).increment();
+            return result;
+        }
+
+        public void remember(Object[] arguments, Object result) {
+            if(result != null)
+                memo.put(arguments, result);
+        }
+
+        public Memo getMemo() {
+            return memo;
+        }
+
+        public boolean isDistinct() {
+            return distinct;
+        }
+
+        public void setDistinct(boolean distinct) {
+            this.distinct = distinct;
+        }
+
         private void update() {
-            consumers.forEach(x -> x.next((Map<SpecificSelector, SpecificFunctionInfo>) applicableSpecificFunctions.clone()));
+            consumers.next(this);
         }
 
         @Override
-        public Binding consume(CellConsumer<Map<SpecificSelector, SpecificFunctionInfo>> consumer) {
-            consumers.add(consumer);
+        public Binding consume(CellConsumer<GenericFunction> consumer) {
+            Binding binding = consumers.add(consumer);
 
-            consumer.next((Map<SpecificSelector, SpecificFunctionInfo>) applicableSpecificFunctions.clone());
+            consumer.next(this);
 
-            return () -> consumers.remove(consumer);
+            return binding;
+        }
+
+        @Override
+        public Binding consumeWeakly(CellConsumer<GenericFunction> consumer) {
+            Binding binding = consumers.addWeak(consumer);
+
+            consumer.next(this);
+
+            return binding;
+        }
+
+        public int getConsumerCount() {
+            return consumers.size();
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        // Operator of the function applicable to arguments of any type, unless it was redefined as an ordinary one
+        public Function<List<Cell>, Cell> getCellOperator() {
+            if(!cellOperatorResolved) {
+                cellOperator = resolveCellOperator();
+                cellOperatorResolved = true;
+            }
+
+            return cellOperator;
+        }
+
+        private Function<List<Cell>, Cell> resolveCellOperator() {
+            for(Map.Entry<SpecificSelector, SpecificFunctionInfo> entry: applicableSpecificFunctions.entrySet()) {
+                if(entry.getValue().cellOperator != null && Arrays.stream(entry.getKey().parameterTypes).allMatch(x -> x == Object.class))
+                    return entry.getValue().cellOperator;
+            }
+
+            return null;
+        }
+
+        public SpecificFunctionInfo resolve(Class<?>[] parameterTypes) {
+            SpecificSelector selector = new SpecificSelector(parameterTypes);
+            SpecificFunctionInfo function = resolutions.get(selector);
+            if(Metrics.enabled) {
+                Metrics.resolutions.increment();
+                if(function != null)
+                    Metrics.resolutionCacheHits.increment();
+            }
+            if(function == null) {
+                function = resolve(applicableSpecificFunctions, parameterTypes);
+                if(function != null)
+                    resolutions.put(selector, function);
+            }
+            return function;
         }
 
         public static SpecificFunctionInfo resolve(Map<SpecificSelector, SpecificFunctionInfo> functions, Class<?>[] parameterTypes) {
-            java.util.List<SpecificFunctionInfo> candidates = functions.entrySet().stream()
+            java.util.List<Map.Entry<SpecificSelector, SpecificFunctionInfo>> candidates = functions.entrySet().stream()
                 .filter(x ->
                     x.getKey().parameterTypes.length == parameterTypes.length)
                 .filter(x ->
-                    IntStream.range(0, parameterTypes.length).allMatch(i ->
-                        x.getKey().parameterTypes[i].isAssignableFrom(parameterTypes[i])))
-                .map(x -> x.getValue())
+                    isAssignable(x.getKey().parameterTypes, parameterTypes))
                 .collect(Collectors.toList());
 
-            if(candidates.size() > 0) {
-                // TODO: Compare candidates; select "most specific".
-                return candidates.get(0);
+            // Select the candidate for which no other candidate is more specific
+            SpecificFunctionInfo mostSpecific = null;
+            Class<?>[] mostSpecificTypes = null;
+
+            for(Map.Entry<SpecificSelector, SpecificFunctionInfo> candidate: candidates) {
+                Class<?>[] candidateTypes = candidate.getKey().parameterTypes;
+                if(mostSpecific == null || isAssignable(mostSpecificTypes, candidateTypes)) {
+                    mostSpecific = candidate.getValue();
+                    mostSpecificTypes = candidateTypes;
+                }
             }
 
-            return null;
+            return mostSpecific;
+        }
+    }
+
+    private static boolean isAssignable(Class<?>[] parameterTypes, Class<?>[] argumentTypes) {
+        return IntStream.range(0, parameterTypes.length).allMatch(i ->
+            parameterTypes[i].isAssignableFrom(argumentTypes[i]));
+    }
+
+    public static class CallSiteCache {
+        public static final int POLYMORPHIC_LIMIT = 4;
+
+        // Replaced as a whole, such that call sites shared by function bodies can be used from several threads
+        private static class State {
+            private static final State EMPTY = new State(null, -1, new Class<?>[0][], new SpecificFunctionInfo[0], false);
+
+            private final GenericFunction genericFunction;
+            private final int version;
+            private final Class<?>[][] entryTypes;
+            private final SpecificFunctionInfo[] entryFunctions;
+            private final boolean megamorphic;
+
+            private State(GenericFunction genericFunction, int version, Class<?>[][] entryTypes, SpecificFunctionInfo[] entryFunctions, boolean megamorphic) {
+                this.genericFunction = genericFunction;
+                this.version = version;
+                this.entryTypes = entryTypes;
+                this.entryFunctions = entryFunctions;
+                this.megamorphic = megamorphic;
+            }
+        }
+
+        private volatile State state = State.EMPTY;
+
+        public SpecificFunctionInfo lookup(GenericFunction genericFunction, Object[] arguments) {
+            State state = this.state;
+
+            if(state.genericFunction != genericFunction || state.version != genericFunction.getVersion())
+                state = new State(genericFunction, genericFunction.getVersion(), State.EMPTY.entryTypes, State.EMPTY.entryFunctions, false);
+
+            if(!state.megamorphic) {
+                for(int i = 0; i < state.entryTypes.length; i++) {
+                    if(matches(state.entryTypes[i], arguments)) {
+                        if(Metrics.enabled)
+                            Metrics.callSiteHits.increment();
+                        return state.entryFunctions[i];
+                    }
+                }
+            }
+
+            if(Metrics.enabled)
+                Metrics.callSiteMisses.increment();
+
+            Class<?>[] parameterTypes = new Class<?>[arguments.length];
+            for(int i = 0; i < arguments.length; i++)
+                parameterTypes[i] = arguments[i].getClass();
+
+            SpecificFunctionInfo function = genericFunction.resolve(parameterTypes);
+
+            if(function != null && !state.megamorphic) {
+                if(state.entryTypes.length < POLYMORPHIC_LIMIT) {
+                    Class<?>[][] entryTypes = Arrays.copyOf(state.entryTypes, state.entryTypes.length + 1);
+                    SpecificFunctionInfo[] entryFunctions = Arrays.copyOf(state.entryFunctions, state.entryFunctions.length + 1);
+                    entryTypes[entryTypes.length - 1] = parameterTypes;
+                    entryFunctions[entryFunctions.length - 1] = function;
+                    state = new State(genericFunction, state.version, entryTypes, entryFunctions, false);
+                } else {
+                    // Too many shapes at this call site; fall back to the generic function's resolutions
+                    state = new State(genericFunction, state.version, State.EMPTY.entryTypes, State.EMPTY.entryFunctions, true);
+                }
+            }
+
+            // A racing update may be lost, which only costs another resolution
+            this.state = state;
+
+            return function;
+        }
+
+        public void invalidate() {
+            state = State.EMPTY;
+        }
+
+        private static boolean matches(Class<?>[] types, Object[] arguments) {
+            for(int i = 0; i < types.length; i++) {
+                if(types[i] != arguments[i].getClass())
+                    return false;
+            }
+            return true;
         }
     }
 
@@ -113,47 +385,97 @@ public class FunctionMap {
     }
 
     private Hashtable<String, Binding> functionBodyBindings = new Hashtable<>();
+    // Functions defined from cells may call any other function, so their results depend on all definitions
+    private ArrayList<GenericFunction> dependentFunctions = new ArrayList<>();
 
-    public void define(String name, Class<?>[] parameterTypes, int localCount, Cell<Function<Object[], Object>> cellBody) {
+    // Functions whose body is redefined whenever the cell gives a new one
+    public void defineCell(String name, Class<?>[] parameterTypes, int localCount, Cell<Function<Object[], Object>> cellBody) {
+        defineCell(name, parameterTypes, localCount, cellBody, false);
+    }
+
+    public void defineCell(String name, Class<?>[] parameterTypes, int localCount, Cell<Function<Object[], Object>> cellBody, boolean pure) {
         Binding binding = functionBodyBindings.get(name);
         if(binding != null)
             binding.remove();
 
+        GenericFunction genericFunction = getGenericFunction(new GenericSelector(name, parameterTypes.length));
+        if(pure && !dependentFunctions.contains(genericFunction))
+            dependentFunctions.add(genericFunction);
+
         binding = cellBody.consume(cellBodyExpression -> {
-            define(name, parameterTypes, localCount, cellBodyExpression);
+            define(name, parameterTypes, localCount, cellBodyExpression, pure);
         });
 
         functionBodyBindings.put(name, binding);
     }
 
     public void define(String name, Class<?>[] parameterTypes, int localCount, Function<Object[], Object> function) {
+        define(name, parameterTypes, localCount, function, false);
+    }
+
+    public void define(String name, Class<?>[] parameterTypes, int localCount, Function<Object[], Object> function, boolean pure) {
+        define(name, parameterTypes, new SpecificFunctionInfo(localCount, function, pure));
+    }
+
+    // Functions over cells, such as ones over time; where calls are over values, as within function bodies, the
+    // function applies instead
+    public void defineOperator(String name, Class<?>[] parameterTypes, Function<Object[], Object> function, Function<List<Cell>, Cell> cellOperator) {
+        define(name, parameterTypes, new SpecificFunctionInfo(parameterTypes.length, function, false, cellOperator));
+    }
+
+    private void define(String name, Class<?>[] parameterTypes, SpecificFunctionInfo function) {
         GenericFunction genericFunction = getGenericFunction(new GenericSelector(name, parameterTypes.length));
-        genericFunction.define(parameterTypes, new SpecificFunctionInfo(localCount, function));
+
+        for(GenericFunction dependentFunction: dependentFunctions)
+            dependentFunction.memo.clear();
+
+        genericFunction.define(parameterTypes, function);
     }
 
     public void define(String name, Class<?>[] parameterTypes, Function<Object[], Object> function) {
         define(name, parameterTypes, parameterTypes.length, function);
     }
 
+    public void define(String name, Class<?>[] parameterTypes, Function<Object[], Object> function, boolean pure) {
+        define(name, parameterTypes, parameterTypes.length, function, pure);
+    }
+
     public <Return> void define(String name, Supplier<Return> function) {
         define(name, new Class<?>[0], args -> function.get());
     }
 
     public <P0, Return> void define(String name, Class<P0> param1, Function<P0, Return> function) {
-        define(name, new Class<?>[]{param1}, args -> function.apply((P0) args[0]));
+        define(name, param1, function, false);
+    }
+
+    public <P0, Return> void define(String name, Class<P0> param1, Function<P0, Return> function, boolean pure) {
+        define(name, new Class<?>[]{param1}, args -> function.apply((P0) args[0]), pure);
     }
 
     public <P0, P1, Return> void define(String name, Class<P0> param1, Class<P1> param2, BiFunction<P0, P1, Return> function) {
-        define(name, new Class<?>[]{param1, param2}, args -> function.apply((P0)args[0], (P1)args[1]));
+        define(name, param1, param2, function, false);
+    }
+
+    public <P0, P1, Return> void define(String name, Class<P0> param1, Class<P1> param2, BiFunction<P0, P1, Return> function, boolean pure) {
+        define(name, new Class<?>[]{param1, param2}, args -> function.apply((P0)args[0], (P1)args[1]), pure);
     }
 
     public <P0, P1, P2, Return> void define(String name, Class<P0> param1, Class<P1> param2, Class<P2> param3, TriFunction<P0, P1, P2, Return> function) {
-        define(name, new Class<?>[]{param1, param2, param3}, args -> function.apply((P0)args[0], (P1)args[1], (P2)args[2]));
+        define(name, param1, param2, param3, function, false);
+    }
+
+    public <P0, P1, P2, Return> void define(String name, Class<P0> param1, Class<P1> param2, Class<P2> param3, TriFunction<P0, P1, P2, Return> function, boolean pure) {
+        define(name, new Class<?>[]{param1, param2, param3}, args -> function.apply((P0)args[0], (P1)args[1], (P2)args[2]), pure);
     }
 
     private Hashtable<Selector, Binding> functionBindings = new Hashtable<>();
     private Hashtable<GenericSelector, GenericFunction> genericFunctions = new Hashtable<>();
 
+    // Functions whose results matter even when the same as before, such as ones with effects, are made non-distinct
+    public void setDistinct(String name, int arity, boolean distinct) {
+        getGenericFunction(new GenericSelector(name, arity)).setDistinct(distinct);
+    }
+
     public GenericFunction getGenericFunction(GenericSelector selector) {
         GenericFunction functionBinding = genericFunctions.get(selector);
         if(functionBinding == null) {
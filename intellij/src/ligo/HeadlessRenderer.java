@@ -0,0 +1,43 @@
+package ligo;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+public class HeadlessRenderer {
+    private final Interpreter interpreter;
+    private final BufferedImage image;
+    private Color background = Color.WHITE;
+
+    public HeadlessRenderer(Interpreter interpreter, int width, int height) {
+        this.interpreter = interpreter;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    public void setBackground(Color background) {
+        this.background = background;
+    }
+
+    public BufferedImage render() {
+        return render(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+    }
+
+    public BufferedImage render(Rectangle clip) {
+        Graphics2D graphics = image.createGraphics();
+
+        try {
+            graphics.setClip(clip);
+            graphics.setColor(background);
+            graphics.fillRect(clip.x, clip.y, clip.width, clip.height);
+            graphics.setColor(Color.BLACK);
+            interpreter.paint(graphics, clip);
+        } finally {
+            graphics.dispose();
+        }
+
+        return image;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+}
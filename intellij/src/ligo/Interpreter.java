@@ -0,0 +1,1074 @@
+package ligo;
+
+import ligo.lang.antlr4.LigoBaseVisitor;
+import ligo.lang.antlr4.LigoLexer;
+import ligo.lang.antlr4.LigoParser;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.NotNull;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.*;
+import java.util.stream.IntStream;
+
+public class Interpreter {
+    public static final Font DEFAULT_FONT = new Font(Font.DIALOG, Font.PLAIN, 12);
+
+    private final TextMeasurer textMeasurer = new TextMeasurer();
+    private final FrameClock frameClock = new FrameClock();
+    // Work from other threads, such as timeouts, waits here for the owning thread to run the next program, unless an
+    // executor of the owning thread is set; the clock only ticks once one is
+    private final ConcurrentLinkedQueue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    private volatile Executor executor = pendingTasks::add;
+    // Receives damaged regions of the display list; null means all of it
+    private Consumer<Rectangle> damageListener = damage -> { };
+
+    public Interpreter() {
+        // Define initial functions
+
+        // Arithmetic is cheaper to recompute than to look up, so only costlier functions are memoized
+        functionMap.define("toString", Object.class, v -> v.toString(), true);
+
+        functionMap.define("+", Long.class, Long.class, (lhs, rhs) -> Numbers.add(lhs.longValue(), rhs.longValue()));
+        functionMap.define("-", Long.class, Long.class, (lhs, rhs) -> Numbers.subtract(lhs.longValue(), rhs.longValue()));
+        functionMap.define("/", Long.class, Long.class, (lhs, rhs) -> Numbers.divide(lhs.longValue(), rhs.longValue()));
+        functionMap.define("*", Long.class, Long.class, (lhs, rhs) -> Numbers.multiply(lhs.longValue(), rhs.longValue()));
+
+        functionMap.define("+", Double.class, Double.class, (lhs, rhs) -> lhs + rhs);
+        functionMap.define("-", Double.class, Double.class, (lhs, rhs) -> lhs - rhs);
+        functionMap.define("/", Double.class, Double.class, (lhs, rhs) -> lhs / rhs);
+        functionMap.define("*", Double.class, Double.class, (lhs, rhs) -> lhs * rhs);
+
+        functionMap.define("+", Number.class, Number.class, (lhs, rhs) -> Numbers.add(lhs, rhs));
+        functionMap.define("-", Number.class, Number.class, (lhs, rhs) -> Numbers.subtract(lhs, rhs));
+        functionMap.define("/", Number.class, Number.class, (lhs, rhs) -> Numbers.divide(lhs, rhs));
+        functionMap.define("*", Number.class, Number.class, (lhs, rhs) -> Numbers.multiply(lhs, rhs));
+
+        functionMap.define("color", String.class, (colorName) -> {
+            Color color = null;
+
+            if (colorName.startsWith("#")) {
+                int red = -1, green = -1, blue = -1;
+
+                if (colorName.length() == 7) {
+                    red = parseHexColor(colorName.substring(1, 3));
+                    green = parseHexColor(colorName.substring(3, 5));
+                    blue = parseHexColor(colorName.substring(5, 7));
+                } else if (colorName.length() == 4) {
+                    red = parseHexColor(colorName.substring(1, 2));
+                    green = parseHexColor(colorName.substring(2, 3));
+                    blue = parseHexColor(colorName.substring(3, 4));
+                }
+
+                color = new Color(red, green, blue);
+            } else {
+                color = Color.getColor(colorName);
+                if (color == null) {
+                    try {
+                        color = (Color) Color.class.getField(colorName).get(null);
+                    } catch (NoSuchFieldException e) {
+                        e.printStackTrace();
+                    } catch (IllegalAccessException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            return color;
+        }, true);
+
+        functionMap.define("font", String.class, String.class, Number.class, (fontFamily, styleStr, size) -> {
+            int style = Arrays.asList(styleStr.split("\\s+")).stream()
+                .map(x -> x.trim()).filter(x -> x.length() > 0)
+                .mapToInt(x -> parseStyle(x)).reduce(Font.PLAIN, (x, y) -> x | y);
+
+            return new Font(fontFamily, style, size.intValue());
+        }, true);
+
+        functionMap.define("measureString", Font.class, String.class, (font, string) -> {
+            FontMetrics fm = textMeasurer.getFontMetrics(font);
+            Rectangle2D bounds = textMeasurer.getStringBounds(font, string);
+
+            HashMap<String, Object> boundsMap = new HashMap<>();
+
+            boundsMap.put("ascent", (long)fm.getAscent());
+            boundsMap.put("descent", (long)fm.getDescent());
+            boundsMap.put("width", bounds.getWidth());
+            boundsMap.put("height", bounds.getHeight());
+
+            // Results are memoized and handed to every caller with the same arguments
+            return Collections.unmodifiableMap(boundsMap);
+        }, true);
+
+        // Define initial sources
+
+        constructorMap.define("time", () -> frameClock.getTime());
+        constructorMap.define("frame", () -> frameClock.getFrame());
+
+        // Define initial operators; intervals are in milliseconds. Like functions, they may be redefined, and within
+        // function bodies, where there is no time, values pass right through
+
+        Executor runtime = command -> executor.execute(command);
+        Class<?>[] operatorTypes = new Class<?>[]{Object.class, Object.class};
+        functionMap.defineOperator("debounce", operatorTypes, args -> args[0], cells ->
+            withInterval(cells, (source, interval) -> RateCells.debounce(source, interval, runtime)));
+        functionMap.defineOperator("throttle", operatorTypes, args -> args[0], cells ->
+            withInterval(cells, (source, interval) -> RateCells.throttleLatest(source, interval, runtime)));
+        functionMap.defineOperator("buffer", operatorTypes, args -> Collections.singletonList(args[0]), cells ->
+            withInterval(cells, (source, interval) -> RateCells.buffer(source, interval, runtime)));
+        functionMap.defineOperator("sample", operatorTypes, args -> args[0], cells -> RateCells.sample(cells.get(0), cells.get(1)));
+
+        // Define initial procedures
+
+        rendererMap.define("setColor", Color.class, (r, color) -> r.setColor(color));
+        rendererMap.define("fillRect", Number.class, Number.class, Number.class, Number.class, (r, x, y, w, h) ->
+            r.fillRect(x.intValue(), y.intValue(), w.intValue(), h.intValue()));
+        rendererMap.define("fillOval", Number.class, Number.class, Number.class, Number.class, (r, x, y, w, h) ->
+            r.fillOval(x.intValue(), y.intValue(), w.intValue(), h.intValue()));
+        rendererMap.define("drawString", String.class, Number.class, Number.class, (r, str, x, y) ->
+            r.drawString(str, x.intValue(), y.intValue()));
+        rendererMap.define("setFont", Font.class, (r, font) ->
+            r.setFont(font));
+    }
+
+    // Applies the operator anew whenever the interval changes
+    private static Cell withInterval(List<Cell> cells, BiFunction<Cell, Long, Cell> operator) {
+        return consumer -> {
+            Binding[] operatorBinding = new Binding[1];
+            // Later intervals consume the source on behalf of the same subscriber
+            Function<Propagator.Node, Binding> subscription = Propagator.getInstance().getSubscription();
+            Binding intervalBinding = cells.get(1).consume(interval -> {
+                if(operatorBinding[0] != null)
+                    operatorBinding[0].remove();
+                operatorBinding[0] = interval instanceof Number ? Propagator.getInstance().subscribe(subscription, () ->
+                    operator.apply(cells.get(0), ((Number)interval).longValue()).consume(consumer)) : null;
+            });
+
+            return () -> {
+                intervalBinding.remove();
+                if(operatorBinding[0] != null)
+                    operatorBinding[0].remove();
+            };
+        };
+    }
+
+    private int parseHexColor(String hex) {
+        switch(hex.length()) {
+            case 1:
+                return Integer.parseInt(hex, 16) * 16;
+            case 2:
+                return Integer.parseInt(hex, 16);
+        }
+
+        return -1;
+    }
+
+    private int parseStyle(String style) {
+        switch (style.toLowerCase()) {
+            case "b":case "bold":
+                return Font.BOLD;
+            case "i":case "italic":
+                return Font.ITALIC;
+            case "p":case "plain":
+                return Font.PLAIN;
+        }
+
+        return -1;
+    }
+
+    // The executor must run its commands on the thread owning the interpreter
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+        frameClock.setExecutor(executor);
+
+        Runnable task;
+        while((task = pendingTasks.poll()) != null)
+            executor.execute(task);
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void runPendingTasks() {
+        Runnable task;
+        while((task = pendingTasks.poll()) != null)
+            task.run();
+    }
+
+    public void setDamageListener(Consumer<Rectangle> damageListener) {
+        this.damageListener = damageListener;
+    }
+
+    public DisplayList.Snapshot snapshot() {
+        return displayList.snapshot();
+    }
+
+    public void paint(Graphics graphics, Rectangle clip) {
+        displayList.paint(graphics, clip);
+    }
+
+    private static final int PROGRAM_CACHE_SIZE = 64;
+
+    private static class CompiledProgram {
+        private final List<Consumer<Object[]>> statements;
+        private final String errors;
+
+        private CompiledProgram(List<Consumer<Object[]>> statements, String errors) {
+            this.statements = statements;
+            this.errors = errors;
+        }
+    }
+
+    // Programs by their source, such that resubmitted code is neither parsed nor compiled again
+    private LinkedHashMap<String, CompiledProgram> programCache = new LinkedHashMap<String, CompiledProgram>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledProgram> eldest) {
+            return size() > PROGRAM_CACHE_SIZE;
+        }
+    };
+
+    private final StringBuilder parseErrors = new StringBuilder();
+    private final BaseErrorListener parseErrorListener = new BaseErrorListener() {
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+            parseErrors.append("(" + line + "," + charPositionInLine + "): " + msg + "\n");
+        }
+    };
+    private final LigoLexer lexer = new LigoLexer(null);
+    private final LigoParser parser = new LigoParser(null);
+    private final ANTLRErrorStrategy bailErrorStrategy = new BailErrorStrategy();
+    private final ANTLRErrorStrategy defaultErrorStrategy = new DefaultErrorStrategy();
+
+    {
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(parseErrorListener);
+    }
+
+    public String run(String code) {
+        CompiledProgram program = programCache.get(code);
+
+        if(program == null) {
+            LigoParser.ProgramContext programCtx = parse(code);
+            // Statements with syntax errors are reported but not executed
+            List<Consumer<Object[]>> statements = programCtx.statement().stream()
+                .filter(x -> !hasSyntaxError(x))
+                .map(x -> parseStatement(x, globalScope, 0)).collect(Collectors.toList());
+            program = new CompiledProgram(statements, parseErrors.toString());
+            programCache.put(code, program);
+        }
+
+        run(program.statements);
+
+        return program.errors;
+    }
+
+    private LigoParser.ProgramContext parse(String code) {
+        parseErrors.setLength(0);
+
+        lexer.setInputStream(new ANTLRInputStream(code));
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        parser.setTokenStream(tokens);
+
+        // SLL prediction is faster and suffices for most input; only on failure is full LL needed
+        parser.removeErrorListeners();
+        parser.setErrorHandler(bailErrorStrategy);
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+
+        try {
+            return parser.program();
+        } catch (ParseCancellationException e) {
+            tokens.seek(0);
+            parser.reset();
+            parser.addErrorListener(parseErrorListener);
+            parser.setErrorHandler(defaultErrorStrategy);
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+
+            return parser.program();
+        }
+    }
+
+    public boolean run(LigoParser.StatementContext statementCtx) {
+        if(hasSyntaxError(statementCtx))
+            return false;
+
+        run(Collections.singletonList(parseStatement(statementCtx, globalScope, 0)));
+
+        return true;
+    }
+
+    private static boolean hasSyntaxError(ParseTree tree) {
+        if(tree instanceof ErrorNode)
+            return true;
+        if(tree instanceof ParserRuleContext && ((ParserRuleContext)tree).exception != null)
+            return true;
+
+        for(int i = 0; i < tree.getChildCount(); i++) {
+            if(hasSyntaxError(tree.getChild(i)))
+                return true;
+        }
+
+        return false;
+    }
+
+    public void run(LigoParser.ProgramContext programCtx) {
+        run(programCtx.statement().stream().map(x -> parseStatement(x, globalScope, 0)).collect(Collectors.toList()));
+    }
+
+    private void run(List<Consumer<Object[]>> statements) {
+        runPendingTasks();
+
+        // The program commits as one propagation turn
+        Propagator.getInstance().transaction(() -> statements.forEach(statement -> statement.accept(new Object[]{})));
+    }
+
+    private DictCell globals = new DictCell("Globals", false);
+    // The dict that statements and expressions apply to is resolved from the arguments of an execution
+    private Function<Object[], DictCell> globalScope = args -> globals;
+    private static final Function<Object[], DictCell> INSTANCE_SCOPE = args -> (DictCell)args[ConstructorTemplate.INSTANCE_INDEX];
+
+    private Consumer<Object[]> parseStatement(ParserRuleContext ctx, Function<Object[], DictCell> self, int depth) {
+        return ctx.accept(new LigoBaseVisitor<Consumer<Object[]>>() {
+            @Override
+            public Consumer<Object[]> visitAssign(@NotNull LigoParser.AssignContext ctx) {
+                String id = ctx.ID().get(ctx.ID().size() - 1).getText();
+
+                Expression valueExpressionTmp = parseExpression(ctx.value, self, depth, Collections.emptyList());
+
+                List<String> accessIds = ctx.ID().subList(0, ctx.ID().size() - 1).stream().map(x -> x.getText()).collect(Collectors.toList());
+
+                String operatorName = null;
+
+                switch(ctx.op.getType()) {
+                    case LigoLexer.ASSIGN_OP_ADD:
+                        operatorName = "+";
+                        break;
+                    case LigoLexer.ASSIGN_OP_SUB:
+                        operatorName = "-";
+                        break;
+                    case LigoLexer.ASSIGN_OP_MUL:
+                        operatorName = "*";
+                        break;
+                    case LigoLexer.ASSIGN_OP_DIV:
+                        operatorName = "/";
+                        break;
+                }
+
+                Expression valueExpression = valueExpressionTmp;
+                String operator = operatorName;
+
+                // The target is resolved when executed, such that the statement can be executed repeatedly
+                return args -> {
+                    DictCell target = self.apply(args);
+
+                    for(String accessId: accessIds) {
+                        Cell valueCell = target.getValueCell(accessId);
+                        // Instances are created as their slot consumes the construction
+                        if(valueCell instanceof ConstructorMap.Construction)
+                            valueCell = ((ConstructorMap.Construction)valueCell).getInstance();
+                        target = (DictCell)valueCell;
+                    }
+
+                    Expression expression = valueExpression;
+                    DictCell resolvedTarget = target;
+
+                    if(operator != null) {
+                        expression = createFunctionCall(operator, Arrays.asList(
+                            createFunctionCall(MACRO_COPY, Arrays.asList(createIdExpression(eArgs -> resolvedTarget, id))),
+                            valueExpression
+                        ));
+                    }
+
+                    Cell valueCell = expression.createValueCell(args);
+                    target.put(id, valueCell);
+                };
+            }
+
+            @Override
+            public Consumer<Object[]> visitCall(@NotNull LigoParser.CallContext ctx) {
+                String name = ctx.ID().getText();
+                List<Expression> argumentExpressions = ctx.expression().stream().map(x -> parseExpression(x, self, depth, Collections.emptyList())).collect(Collectors.toList());
+
+                return args -> self.apply(args).addBinding(new RendererCall(name, argumentExpressions, args));
+            }
+
+            @Override
+            public Consumer<Object[]> visitConstructorDefinition(@NotNull LigoParser.ConstructorDefinitionContext ctx) {
+                String name = ctx.ID().getText();
+
+                // Only expressions occurring more than once are worth sharing
+                HashMap<String, Integer> keyCounts = new HashMap<>();
+                collectShareKeys(ctx.object(), keyCounts);
+                Set<String> sharedKeys = keyCounts.entrySet().stream().filter(x -> x.getValue() > 1).map(x -> x.getKey()).collect(Collectors.toSet());
+
+                // The body is compiled once and applies to whichever instance it is executed for
+                List<Consumer<Object[]>> statements = ctx.object().statement().stream()
+                    .map(x -> parseStatement(x, INSTANCE_SCOPE, depth)).collect(Collectors.toList());
+                ConstructorTemplate template = new ConstructorTemplate(name, statements, sharedKeys);
+
+                // Cell constructor definition
+                return args -> constructorMap.define(name, template);
+            }
+
+            @Override
+            public Consumer<Object[]> visitFunctionDefinition(@NotNull LigoParser.FunctionDefinitionContext ctx) {
+                String name = ctx.ID().getText();
+                int functionDepth = depth + 1;
+
+                ArrayList<VariableInfo> functionLocals = new ArrayList<>();
+                if (ctx.parameters() != null)
+                    functionLocals.addAll(ctx.parameters().ID().stream().map(x -> new VariableInfo(Object.class, x.getText(), functionDepth)).collect(Collectors.toList()));
+
+                ParserRuleContext bodyTree = ctx.expression();
+
+                Expression bodyCell = parseExpression(bodyTree, self, functionDepth, functionLocals);
+
+                // Compare in relation to the given function depth
+                Stream<VariableInfo> parameters = functionLocals.stream().filter(x -> x.depth == functionDepth);
+                Class<?>[] parameterTypes = parameters.map(x -> x.type).toArray(s -> new Class<?>[s]);
+
+                if(parameterTypes.length > 0) {
+                    return args -> {
+                        Cell<MethodHandle> handleBody = bodyCell.createHandleCell(args);
+                        Cell<Function<Object[], Object>> cellBody = handleBody != null
+                            ? consumer -> handleBody.consume(handle -> consumer.next(FunctionCompiler.toFunction(handle)))
+                            : bodyCell.createFunctionCell(args);
+                        // Expressions have no side effects
+                        functionMap.defineCell(name, parameterTypes, functionLocals.size(), cellBody, true);
+                    };
+                } else {
+                    // Cell constructor definition
+                    return args -> {
+                        Supplier<Cell> constructor = () -> bodyCell.createValueCell(args);
+                        constructorMap.define(name, constructor);
+                    };
+                }
+            }
+        });
+    }
+
+    private class RendererCall extends Propagator.Node implements Binding {
+        private final String name;
+        private final Object[] arguments;
+        private final List<Binding> argumentBindings;
+        private Allocation<Renderer> graphicsAllocation;
+        private boolean removed;
+
+        private RendererCall(String name, List<Expression> argumentExpressions, Object[] args) {
+            // The display list is shared by all renderer calls
+            super(null);
+            this.name = name;
+            arguments = new Object[argumentExpressions.size()];
+            // Allocated as the statement runs, such that drawing follows statement order rather than propagation order
+            graphicsAllocation = createGraphicsConsumer(arguments);
+
+            List<Cell> argumentCells = argumentExpressions.stream().map(x -> x.createValueCell(args)).collect(Collectors.toList());
+            argumentBindings = Propagator.getInstance().subscribe(this, () -> IntStream.range(0, argumentExpressions.size()).mapToObj(i -> {
+                return argumentCells.get(i).consume(x -> {
+                    arguments[i] = x;
+                    Propagator.getInstance().schedule(this);
+                });
+            }).collect(Collectors.toList()));
+        }
+
+        @Override
+        protected void run() {
+            // May still be queued when removed
+            if(removed)
+                return;
+
+            if(Arrays.asList(arguments).stream().allMatch(x -> x != null)) {
+                Class<?>[] parameterTypes = Arrays.asList(arguments).stream().map(x -> x.getClass()).toArray(s -> new Class<?>[s]);
+                Renderer renderer = rendererMap.resolve(name, parameterTypes);
+
+                graphicsAllocation.set(renderer);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "render " + name;
+        }
+
+        @Override
+        public void remove() {
+            if(removed)
+                return;
+
+            removed = true;
+            argumentBindings.forEach(x -> x.remove());
+            if(graphicsAllocation != null) {
+                graphicsAllocation.remove();
+                graphicsAllocation = null;
+            }
+        }
+    }
+
+    private class RendererAllocation implements Allocation<Renderer> {
+        private final Object[] arguments;
+        private final DisplayList.Range range = displayList.add();
+
+        private RendererAllocation(Object[] arguments) {
+            this.arguments = arguments;
+        }
+
+        @Override
+        public void set(Renderer value) {
+            DisplayList.Recorder recorder = new DisplayList.Recorder();
+            if(value != null)
+                value.render(recorder, arguments);
+
+            damageListener.accept(displayList.set(range, recorder.getCommands()));
+        }
+
+        @Override
+        public void remove() {
+            damageListener.accept(displayList.remove(range));
+        }
+    }
+
+    private Allocation<Renderer> createGraphicsConsumer(Object[] arguments) {
+        return new RendererAllocation(arguments);
+    }
+
+    private DisplayList displayList = new DisplayList(font -> textMeasurer.getFontMetrics(font), DEFAULT_FONT);
+    private FunctionMap functionMap = new FunctionMap();
+    private RendererMap rendererMap = new RendererMap();
+    private ConstructorMap constructorMap = new ConstructorMap();
+
+    private Expression parseExpression(ParserRuleContext ctx, Function<Object[], DictCell> self, int depth, List<VariableInfo> locals) {
+        return ctx.accept(new LigoBaseVisitor<Expression>() {
+            @Override
+            public Expression visitLeafExpression(@NotNull LigoParser.LeafExpressionContext ctx) {
+                Expression targetExpression = ctx.getChild(0).accept(this);
+                Expression expression = targetExpression;
+                String key = ctx.getChild(0).getText();
+
+                // Be sensitive to the address, not the current cell at the address
+                for(LigoParser.IdContext idCtx: ctx.accessChain().id()) {
+                    String id = idCtx.getText();
+                    key += "." + id;
+                    Expression targetExpressionTmp = targetExpression;
+                    expression = new Expression() {
+                        @Override
+                        public Cell createValueCell(Object[] args) {
+                            Cell target = targetExpressionTmp.createValueCell(args);
+                            return new Cell() {
+                                @Override
+                                public Binding consume(CellConsumer consumer) {
+                                    return target.consume(x -> {
+                                        Object value = ((Map<String, Object>)x).get(id);
+
+                                        consumer.next(value);
+                                    });
+                                }
+                            };
+                        }
+
+                        @Override
+                        public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
+                            Cell<Function<Object[], Object>> target = targetExpressionTmp.createFunctionCell(args);
+                            return new Cell<Function<Object[], Object>>() {
+                                @Override
+                                public Binding consume(CellConsumer<Function<Object[], Object>> consumer) {
+                                    return target.consume(x -> {
+                                        Function<Object[], Object> value = args -> ((Map<String, Object>)x.apply(args)).get(id);
+
+                                        consumer.next(value);
+                                    });
+                                }
+                            };
+                        }
+
+                        @Override
+                        public Cell<MethodHandle> createHandleCell(Object[] args) {
+                            Cell<MethodHandle> target = targetExpressionTmp.createHandleCell(args);
+                            if(target == null)
+                                return null;
+                            return consumer -> target.consume(x -> consumer.next(FunctionCompiler.access(x, id)));
+                        }
+                    };
+                    expression = share(ctx, key, expression);
+                    targetExpression = expression;
+                }
+
+                return expression;
+            }
+
+            @Override
+            public Expression visitNumber(@NotNull LigoParser.NumberContext ctx) {
+                Number value = Numbers.parse(ctx.NUMBER().getText());
+                //return args -> new Singleton<>(value);
+                return new Expression() {
+                    @Override
+                    public Cell createValueCell(Object[] args) {
+                        return new Singleton<>(value);
+                    }
+
+                    @Override
+                    public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
+                        return new Singleton<>(eArgs -> value);
+                    }
+
+                    @Override
+                    public Cell<MethodHandle> createHandleCell(Object[] args) {
+                        return new Singleton<>(FunctionCompiler.constant(value));
+                    }
+                };
+            }
+
+            @Override
+            public Expression visitString(@NotNull LigoParser.StringContext ctx) {
+                String rawValue = ctx.STRING().getText().substring(1, ctx.STRING().getText().length() - 1);
+                String value = rawValue.replace("\\n", "\n").replace("\\r", "\r").replace("\\t", "\t").replace("\\\\", "\\");
+
+                return new Expression() {
+                    @Override
+                    public Cell createValueCell(Object[] args) {
+                        return new Singleton<>(value);
+                    }
+
+                    @Override
+                    public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
+                        return new Singleton<>(eArgs -> value);
+                    }
+
+                    @Override
+                    public Cell<MethodHandle> createHandleCell(Object[] args) {
+                        return new Singleton<>(FunctionCompiler.constant(value));
+                    }
+                };
+            }
+
+            @Override
+            public Expression visitId(@NotNull LigoParser.IdContext ctx) {
+                String id = ctx.ID().getText();
+
+                for(int i = locals.size() - 1; i >= 0; i--) {
+                    if(locals.get(i).name.equals(id))
+                        return createLocalExpression(i);
+                }
+
+                return createIdExpression(self, id);
+            }
+
+            @Override
+            public Expression visitAddExpression(@NotNull LigoParser.AddExpressionContext ctx) {
+                Expression lhs = parseExpression(ctx.mulExpression(0), self, depth, locals);
+                String key = ctx.mulExpression(0).getText();
+
+                if (ctx.mulExpression().size() > 1) {
+                    for (int i = 1; i < ctx.mulExpression().size(); i++) {
+                        Expression rhsCell = parseExpression(ctx.mulExpression(i), self, depth, locals);
+
+                        Expression lhsCell = lhs;
+
+                        String operator = ctx.ADD_OP(i - 1).getText();
+                        key += operator + ctx.mulExpression(i).getText();
+
+                        lhs = share(ctx, key, createFunctionCall(operator, Arrays.asList(lhsCell, rhsCell)));
+                    }
+                }
+
+                return lhs;
+            }
+
+            @Override
+            public Expression visitMulExpression(@NotNull LigoParser.MulExpressionContext ctx) {
+                Expression lhs = parseExpression(ctx.leafExpression(0), self, depth, locals);
+                String key = ctx.leafExpression(0).getText();
+
+                if (ctx.leafExpression().size() > 1) {
+                    for (int i = 1; i < ctx.leafExpression().size(); i++) {
+                        Expression rhsCell = parseExpression(ctx.leafExpression(i), self, depth, locals);
+
+                        Expression lhsCell = lhs;
+
+                        String operator = ctx.MUL_OP(i - 1).getText();
+                        key += operator + ctx.leafExpression(i).getText();
+
+                        lhs = share(ctx, key, createFunctionCall(operator, Arrays.asList(lhsCell, rhsCell)));
+                    }
+                }
+
+                return lhs;
+            }
+
+            @Override
+            public Expression visitCall(@NotNull LigoParser.CallContext ctx) {
+                String name = ctx.ID().getText();
+                List<Expression> argumentExpressions = ctx.expression().stream().map(x -> parseExpression(x, self, depth, locals)).collect(Collectors.toList());
+
+                if(argumentExpressions.size() > 0)
+                    return share(ctx, ctx.getText(), createFunctionCall(name, argumentExpressions));
+                return new Expression() {
+                    @Override
+                    public Cell createValueCell(Object[] args) {
+                        return constructorMap.construct(name);
+                    }
+
+                    @Override
+                    public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
+                        // This shouldn't be supported, right?
+                        return null;
+                    }
+                };
+            }
+
+            private Expression share(ParseTree tree, String key, Expression expression) {
+                // Values of locals differ between evaluations
+                if(!locals.isEmpty() || !isShareable(tree))
+                    return expression;
+
+                return new Expression() {
+                    @Override
+                    public Cell createValueCell(Object[] args) {
+                        return self.apply(args).share(key, () -> expression.createValueCell(args));
+                    }
+
+                    @Override
+                    public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
+                        return expression.createFunctionCell(args);
+                    }
+
+                    @Override
+                    public Cell<MethodHandle> createHandleCell(Object[] args) {
+                        return expression.createHandleCell(args);
+                    }
+                };
+            }
+        });
+    }
+
+    // Collects the keys of the expressions that may be shared, as produced by parseExpression
+    private static void collectShareKeys(ParseTree tree, Map<String, Integer> keyCounts) {
+        if(tree instanceof LigoParser.LeafExpressionContext) {
+            LigoParser.LeafExpressionContext leafCtx = (LigoParser.LeafExpressionContext)tree;
+            String key = leafCtx.getChild(0).getText();
+            for(LigoParser.IdContext idCtx: leafCtx.accessChain().id()) {
+                key += "." + idCtx.getText();
+                keyCounts.merge(key, 1, Integer::sum);
+            }
+        } else if(tree instanceof LigoParser.AddExpressionContext) {
+            LigoParser.AddExpressionContext addCtx = (LigoParser.AddExpressionContext)tree;
+            String key = addCtx.mulExpression(0).getText();
+            for(int i = 1; i < addCtx.mulExpression().size(); i++) {
+                key += addCtx.ADD_OP(i - 1).getText() + addCtx.mulExpression(i).getText();
+                keyCounts.merge(key, 1, Integer::sum);
+            }
+        } else if(tree instanceof LigoParser.MulExpressionContext) {
+            LigoParser.MulExpressionContext mulCtx = (LigoParser.MulExpressionContext)tree;
+            String key = mulCtx.leafExpression(0).getText();
+            for(int i = 1; i < mulCtx.leafExpression().size(); i++) {
+                key += mulCtx.MUL_OP(i - 1).getText() + mulCtx.leafExpression(i).getText();
+                keyCounts.merge(key, 1, Integer::sum);
+            }
+        } else if(tree instanceof LigoParser.CallContext) {
+            keyCounts.merge(tree.getText(), 1, Integer::sum);
+        }
+
+        for(int i = 0; i < tree.getChildCount(); i++)
+            collectShareKeys(tree.getChild(i), keyCounts);
+    }
+
+    // Constructions and copies must be evaluated separately each time they occur
+    private static boolean isShareable(ParseTree tree) {
+        if(tree instanceof LigoParser.CallContext) {
+            LigoParser.CallContext callCtx = (LigoParser.CallContext)tree;
+            if(callCtx.expression().isEmpty() || callCtx.ID().getText().equals(MACRO_COPY))
+                return false;
+        }
+
+        for(int i = 0; i < tree.getChildCount(); i++) {
+            if(!isShareable(tree.getChild(i)))
+                return false;
+        }
+
+        return true;
+    }
+
+    private Expression createIdExpression(Function<Object[], DictCell> self, String id) {
+        return new Expression() {
+            @Override
+            public Cell createValueCell(Object[] args) {
+                return self.apply(args).get(id);
+            }
+
+            @Override
+            public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
+                DictCell dict = self.apply(args);
+                return consumer -> dict.get(id).consume(value -> consumer.next(eArgs -> value));
+            }
+
+            @Override
+            public Cell<MethodHandle> createHandleCell(Object[] args) {
+                DictCell dict = self.apply(args);
+                // The current value is embedded as a constant; a change produces a new body
+                return consumer -> dict.get(id).consume(value -> consumer.next(FunctionCompiler.constant(value)));
+            }
+        };
+    }
+
+    private Expression createLocalExpression(int index) {
+        return new Expression() {
+            @Override
+            public Cell createValueCell(Object[] args) {
+                return new Singleton<>(args[index]);
+            }
+
+            @Override
+            public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
+                return new Singleton<>(eArgs -> eArgs[index]);
+            }
+
+            @Override
+            public Cell<MethodHandle> createHandleCell(Object[] args) {
+                return new Singleton<>(FunctionCompiler.local(index));
+            }
+        };
+    }
+
+    private static final String MACRO_COPY = "copy";
+
+    private Expression createFunctionCall(String name, List<Expression> argumentExpressions) {
+        // Is macro?
+
+        if(name.equals(MACRO_COPY)) {
+            return new Expression() {
+                @Override
+                public Cell createValueCell(Object[] args) {
+                    Cell arg1 = argumentExpressions.get(0).createValueCell(args);
+
+                    return new Cell() {
+                        private Binding binding;
+
+                        @Override
+                        public Binding consume(CellConsumer consumer) {
+                            // Copy samples the current value, so pending propagation is settled first, unless within a
+                            // transaction, where updates still pending are not seen
+                            Propagator.getInstance().flush();
+
+                            binding = arg1.consume(value -> {
+                                consumer.next(value);
+                            });
+
+                            binding.remove();
+
+                            /*
+
+                            Should be something like:
+
+                            Channel channel = arg1.createChannel();
+                            channel.consume(value -> {
+                                consumer.next(value);
+                                channel.remove();
+                            });
+
+                            or perhaps:
+
+                            Binding binding = arg1.consume(value -> {
+                                consumer.next(value);
+                                binding.remove();
+                            });
+                            binding.startConsumption();
+
+                            "Dual-bindings2?
+
+                            A binding could be supplied to the consumer, as well as to the call-site:
+
+                            Binding binding = arg1.consume((binding, value) -> {
+                                consumer.next(value);
+                                binding.remove();
+                            });
+
+                            */
+
+                            return () -> { };
+                        }
+                    };
+                }
+
+                @Override
+                public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
+                    return null;
+                }
+            };
+        }
+
+        return new Expression() {
+            @Override
+            public Cell createValueCell(Object[] args) {
+                Cell callCell = new Cell() {
+                    @Override
+                    public Binding consume(CellConsumer consumer) {
+                        return new Binding() {
+                            Object[] arguments = new Object[argumentExpressions.size()];
+                            FunctionMap.GenericFunction genericFunction = functionMap.getGenericFunction(new FunctionMap.GenericSelector(name, argumentExpressions.size()));
+                            FunctionMap.CallSiteCache callSiteCache = new FunctionMap.CallSiteCache();
+                            Object result;
+                            Propagator.Node node = new Propagator.Node() {
+                                @Override
+                                protected void run() {
+                                    update();
+                                }
+
+                                @Override
+                                public String toString() {
+                                    return name + "()";
+                                }
+                            };
+                            boolean subscribing = true;
+                            Binding genericFunctionBinding = genericFunction.consume(f -> scheduleUpdate());
+                            List<Cell> argumentCells = argumentExpressions.stream().map(x -> x.createValueCell(args)).collect(Collectors.toList());
+                            List<Binding> argumentBindings = Propagator.getInstance().subscribe(node, () -> IntStream.range(0, argumentExpressions.size()).mapToObj(i -> {
+                                return argumentCells.get(i).consume(x -> {
+                                    arguments[i] = x;
+                                    scheduleUpdate();
+                                });
+                            }).collect(Collectors.toList()));
+                            Binding dependency = Propagator.getInstance().depend(node);
+
+                            {
+                                // Values given while subscribing are current, so the first result is given right away,
+                                // such that even copies made within a transaction see it
+                                subscribing = false;
+                                update();
+                            }
+
+                            private void scheduleUpdate() {
+                                if(!subscribing)
+                                    Propagator.getInstance().schedule(node);
+                            }
+
+                            @Override
+                            public void remove() {
+                                argumentBindings.forEach(x -> x.remove());
+                                genericFunctionBinding.remove();
+                                dependency.remove();
+                            }
+
+                            private void update() {
+                                if(Arrays.asList(arguments).stream().allMatch(x -> x != null)) {
+                                    Object[] callArgs = arguments;
+
+                                    if(genericFunction != null) {
+                                        FunctionMap.SpecificFunctionInfo function = callSiteCache.lookup(genericFunction, callArgs);
+
+                                        if(function != null) {
+                                            Object next = genericFunction.call(function, callArgs);
+                                            if(next != null && genericFunction.isDistinct() && Values.same(next, result)) {
+                                                if(Metrics.enabled)
+                                                    Metrics.cutOffs.increment();
+                                                return;
+                                            }
+                                            result = next;
+                                            consumer.next(next);
+                                        }
+                                    }
+                                }
+                            }
+                        };
+                    }
+                };
+
+                FunctionMap.GenericFunction callee = functionMap.getGenericFunction(new FunctionMap.GenericSelector(name, argumentExpressions.size()));
+                if(callee.getCellOperator() == null)
+                    return callCell;
+
+                // Operators apply to the cells of the arguments until redefined as ordinary functions
+                return consumer -> new Binding() {
+                    Function<Propagator.Node, Binding> subscription = Propagator.getInstance().getSubscription();
+                    Function<List<Cell>, Cell> cellOperator;
+                    Binding callBinding;
+                    Binding calleeBinding = callee.consume(f -> {
+                        Function<List<Cell>, Cell> nextCellOperator = f.getCellOperator();
+                        if(callBinding != null && nextCellOperator == cellOperator)
+                            return;
+
+                        if(callBinding != null)
+                            callBinding.remove();
+                        cellOperator = nextCellOperator;
+                        Cell cell = cellOperator != null
+                            ? cellOperator.apply(argumentExpressions.stream().map(x -> x.createValueCell(args)).collect(Collectors.toList()))
+                            : callCell;
+                        callBinding = Propagator.getInstance().subscribe(subscription, () -> cell.consume(consumer));
+                    });
+
+                    @Override
+                    public void remove() {
+                        calleeBinding.remove();
+                        callBinding.remove();
+                    }
+                };
+            }
+
+            @Override
+            public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
+                Cell<MethodHandle> handleCell = createHandleCell(args);
+                if(handleCell == null)
+                    return null;
+                return consumer -> handleCell.consume(handle -> consumer.next(FunctionCompiler.toFunction(handle)));
+            }
+
+            @Override
+            public Cell<MethodHandle> createHandleCell(Object[] args) {
+                List<Cell<MethodHandle>> argumentCells = argumentExpressions.stream().map(x -> x.createHandleCell(args)).collect(Collectors.toList());
+                if(argumentCells.contains(null))
+                    return null;
+
+                FunctionMap.GenericFunction genericFunction = functionMap.getGenericFunction(new FunctionMap.GenericSelector(name, argumentExpressions.size()));
+                return FunctionCompiler.combine(argumentCells, handles -> FunctionCompiler.call(genericFunction, handles));
+            }
+        };
+    }
+
+    public DictCell getGlobals() {
+        return globals;
+    }
+
+    public TextMeasurer getTextMeasurer() {
+        return textMeasurer;
+    }
+
+    public FrameClock getFrameClock() {
+        return frameClock;
+    }
+
+    public FunctionMap getFunctionMap() {
+        return functionMap;
+    }
+
+    public RendererMap getRendererMap() {
+        return rendererMap;
+    }
+
+    public ConstructorMap getConstructorMap() {
+        return constructorMap;
+    }
+
+    // Counts of what is kept alive, to tell whether a session leaks; bindings and dicts are counted process-wide, of
+    // those created while metrics are enabled
+    public Map<String, Object> getLiveStatistics() {
+        Runtime runtime = Runtime.getRuntime();
+        LinkedHashMap<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("bindings", ConsumerList.getLiveCount());
+        statistics.put("dicts", DictCell.getLiveCount());
+        statistics.put("globalRendererCalls", globals.getBindingCount());
+        statistics.put("displayListRanges", displayList.getRangeCount());
+        statistics.put("usedMemory", runtime.totalMemory() - runtime.freeMemory());
+        return statistics;
+    }
+}
@@ -1,29 +1,12 @@
 package ligo;
 
-import ligo.lang.antlr4.LigoBaseVisitor;
-import ligo.lang.antlr4.LigoLexer;
-import ligo.lang.antlr4.LigoParser;
-import org.antlr.v4.runtime.*;
-import org.antlr.v4.runtime.misc.NotNull;
-
 import javax.swing.*;
 import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.awt.geom.Rectangle2D;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.util.*;
-import java.util.List;
-import java.util.function.BiConsumer;
-import java.util.function.Consumer;
-import java.util.function.Function;
-import java.util.function.Supplier;
-import java.util.stream.*;
-import java.util.stream.IntStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainFrame extends JFrame {
     public static final String PRODUCT_NAME = "Ligo";
@@ -32,6 +15,17 @@ public class MainFrame extends JFrame {
     private JPanel console;
     private JTextPane consoleHistory;
     private JTextPane consolePending;
+    // The interpreter and all of its cells are only touched by the runtime thread
+    private Interpreter interpreter = new Interpreter();
+    private ExecutorService runtime = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Ligo runtime");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Rectangle pendingDamage;
+    private boolean pendingFullDamage;
+    // Only touched by the event dispatch thread
+    private DisplayList.Snapshot snapshot;
 
     public MainFrame() {
         setTitle(PRODUCT_NAME);
@@ -41,7 +35,8 @@ public class MainFrame extends JFrame {
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
 
-                graphicsConsumers.forEach(x -> x.accept(g));
+                if(snapshot != null)
+                    snapshot.paint(g, g.getClipBounds());
             }
         };
 
@@ -74,108 +69,16 @@ public class MainFrame extends JFrame {
 
         getContentPane().add(splitPane, BorderLayout.CENTER);
 
-        // Define initial functions
-
-        functionMap.define("toString", Object.class, v -> v.toString());
-
-        functionMap.define("+", BigDecimal.class, BigDecimal.class, (lhs, rhs) -> lhs.add(rhs));
-        functionMap.define("-", BigDecimal.class, BigDecimal.class, (lhs, rhs) -> lhs.subtract(rhs));
-        functionMap.define("/", BigDecimal.class, BigDecimal.class, (lhs, rhs) -> lhs.divide(rhs, MathContext.DECIMAL128));
-        functionMap.define("*", BigDecimal.class, BigDecimal.class, (lhs, rhs) -> lhs.multiply(rhs));
-
-        functionMap.define("color", String.class, (colorName) -> {
-            Color color = null;
-
-            if (colorName.startsWith("#")) {
-                int red = -1, green = -1, blue = -1;
-
-                if (colorName.length() == 7) {
-                    red = parseHexColor(colorName.substring(1, 3));
-                    green = parseHexColor(colorName.substring(3, 5));
-                    blue = parseHexColor(colorName.substring(5, 7));
-                } else if (colorName.length() == 4) {
-                    red = parseHexColor(colorName.substring(1, 2));
-                    green = parseHexColor(colorName.substring(2, 3));
-                    blue = parseHexColor(colorName.substring(3, 4));
-                }
-
-                color = new Color(red, green, blue);
-            } else {
-                color = Color.getColor(colorName);
-                if (color == null) {
-                    try {
-                        color = (Color) Color.class.getField(colorName).get(null);
-                    } catch (NoSuchFieldException e) {
-                        e.printStackTrace();
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-
-            return color;
+        interpreter.setDamageListener(damage -> {
+            if(damage == null)
+                pendingFullDamage = true;
+            else if(!damage.isEmpty())
+                pendingDamage = pendingDamage != null ? pendingDamage.union(damage) : damage;
         });
 
-        functionMap.define("font", String.class, String.class, BigDecimal.class, (fontFamily, styleStr, size) -> {
-            int style = Arrays.asList(styleStr.split("\\s+")).stream()
-                .map(x -> x.trim()).filter(x -> x.length() > 0)
-                .mapToInt(x -> parseStyle(x)).reduce(Font.PLAIN, (x, y) -> x | y);
-
-            return new Font(fontFamily, style, size.intValue());
-        });
-
-        functionMap.define("measureString", Font.class, String.class, (font, string) -> {
-            // Should be based on a concrete graphics object
-            Graphics graphics = getGraphics();
-            FontMetrics fm = graphics.getFontMetrics(font);
-            Rectangle2D bounds = fm.getStringBounds(string, graphics);
-            //Rectangle bounds = font.getStringBounds(string, new FontRenderContext(font.getTransform(), false, false)).getBounds();
-
-            HashMap<String, Object> boundsMap = new HashMap<>();
-
-            boundsMap.put("ascent", new BigDecimal(fm.getAscent()));
-            boundsMap.put("descent", new BigDecimal(fm.getDescent()));
-            boundsMap.put("width", new BigDecimal(bounds.getWidth()));
-            boundsMap.put("height", new BigDecimal(bounds.getHeight()));
-
-            return boundsMap;
-        });
-
-        // Define initial procedures
-
-        rendererMap.define("setColor", Color.class, (g, color) -> g.setColor(color));
-        rendererMap.define("fillRect", BigDecimal.class, BigDecimal.class, BigDecimal.class, BigDecimal.class, (g, x, y, w, h) ->
-            g.fillRect(x.intValue(), y.intValue(), w.intValue(), h.intValue()));
-        rendererMap.define("fillOval", BigDecimal.class, BigDecimal.class, BigDecimal.class, BigDecimal.class, (g, x, y, w, h) ->
-            g.fillOval(x.intValue(), y.intValue(), w.intValue(), h.intValue()));
-        rendererMap.define("drawString", String.class, BigDecimal.class, BigDecimal.class, (g, str, x, y) ->
-            g.drawString(str, x.intValue(), y.intValue()));
-        rendererMap.define("setFont", Font.class, (g, font) ->
-            g.setFont(font));
-    }
-
-    private int parseHexColor(String hex) {
-        switch(hex.length()) {
-            case 1:
-                return Integer.parseInt(hex, 16) * 16;
-            case 2:
-                return Integer.parseInt(hex, 16);
-        }
-
-        return -1;
-    }
-
-    private int parseStyle(String style) {
-        switch (style.toLowerCase()) {
-            case "b":case "bold":
-                return Font.BOLD;
-            case "i":case "italic":
-                return Font.ITALIC;
-            case "p":case "plain":
-                return Font.PLAIN;
-        }
-
-        return -1;
+        // Clock ticks propagate on the runtime thread, and the next one waits until this frame is painted
+        interpreter.setExecutor(runtime);
+        interpreter.getFrameClock().setFrameListener(done -> present(true, done));
     }
 
     private final SimpleAttributeSet okAttributeSet;
@@ -197,544 +100,64 @@ public class MainFrame extends JFrame {
         String code = consolePending.getText();
         consolePending.setText("");
 
-        try {
-            final StringBuilder errors = new StringBuilder();
-
-            ANTLRInputStream in = new ANTLRInputStream(new ByteArrayInputStream(code.getBytes()));
-
-            LigoLexer lexer = new LigoLexer(in);
-
-            lexer.removeErrorListeners();
-            lexer.addErrorListener(new BaseErrorListener() {
-                @Override
-                public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
-                    errors.append("(" + line + "," + charPositionInLine + "): " + msg + "\n");
-                }
-            });
-
-            LigoParser parser = new LigoParser(new CommonTokenStream(lexer));
-
-            parser.removeErrorListeners();
-            parser.addErrorListener(new BaseErrorListener() {
-                @Override
-                public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
-                    errors.append("(" + line + "," + charPositionInLine + "): " + msg + "\n");
-                }
-            });
-
-            LigoParser.ProgramContext programCtx = parser.program();
-
-            // Sometimes, a graphics object is need for some functions (so far measureString)
-            run(programCtx);
-
-            String result;
-            AttributeSet attr;
-
-            if (errors.length() == 0) {
-                result = code + "\n";
-                attr = okAttributeSet;
-            } else {
-                result = code + "\n" + errors;
-                attr = notOKAttributeSet;
-            }
-
-            try {
-                consoleHistory.getDocument().insertString(0, result, attr);
-                consoleHistory.getDocument().insertString(result.length(), "\n", separatorAttributeSet);
-                consoleHistory.getHighlighter().addHighlight(result.length(), result.length() + 1, new Highlighter.HighlightPainter() {
-                    @Override
-                    public void paint(Graphics g, int offs0, int offs1, Shape bounds, JTextComponent c) {
-                        Rectangle r = null;
-                        try {
-                            r = c.modelToView(offs0);
-                        } catch (BadLocationException e) {
-                            e.printStackTrace();
-                        }
-                        g.setColor(new Color(220, 220, 220));
-                        g.fillRect(0, r.y, c.getWidth(), r.height);
-                    }
-                });
-            } catch (BadLocationException e1) {
-                e1.printStackTrace();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private void run(LigoParser.ProgramContext programCtx) {
-        programCtx.statement().forEach(x -> {
-            Consumer<Object[]> statement = parseStatement(x, globals, 0);
-            statement.accept(new Object[]{});
+        runtime.execute(() -> {
+            String errors = interpreter.run(code);
+            present(false, () -> appendHistory(code, errors));
         });
     }
 
-    private DictCell globals = new DictCell("Globals");
-
-    private Consumer<Object[]> parseStatement(ParserRuleContext ctx, DictCell self, int depth) {
-        return ctx.accept(new LigoBaseVisitor<Consumer<Object[]>>() {
-            @Override
-            public Consumer<Object[]> visitAssign(@NotNull LigoParser.AssignContext ctx) {
-                String id = ctx.ID().get(ctx.ID().size() - 1).getText();
-
-                Expression valueExpressionTmp = parseExpression(ctx.value, self, depth);
-
-                DictCell targetTmp = self;
-
-                for(int i = 0; i < ctx.ID().size() - 1; i++) {
-                    String accessId = ctx.ID().get(i).getText();
-                    targetTmp = (DictCell)targetTmp.getValueCell(accessId);
-                }
-
-                String operatorName = null;
-
-                switch(ctx.op.getType()) {
-                    case LigoLexer.ASSIGN_OP_ADD:
-                        operatorName = "+";
-                        break;
-                    case LigoLexer.ASSIGN_OP_SUB:
-                        operatorName = "-";
-                        break;
-                    case LigoLexer.ASSIGN_OP_MUL:
-                        operatorName = "*";
-                        break;
-                    case LigoLexer.ASSIGN_OP_DIV:
-                        operatorName = "/";
-                        break;
-                }
-
-                if(operatorName != null) {
-                    valueExpressionTmp = createFunctionCall(operatorName, Arrays.asList(
-                        createFunctionCall(MACRO_COPY, Arrays.asList(createIdExpression(targetTmp, id))),
-                        valueExpressionTmp
-                    ));
-                }
-
-                Expression valueExpression = valueExpressionTmp;
-                DictCell target = targetTmp;
-                
-                return args -> {
-                    Cell valueCell = valueExpression.createValueCell(args);
-                    target.put(id, valueCell);
-                };
-            }
-
-            @Override
-            public Consumer<Object[]> visitCall(@NotNull LigoParser.CallContext ctx) {
-                String name = ctx.ID().getText();
-                List<Expression> argumentExpressions = ctx.expression().stream().map(x -> parseExpression(x, self, depth)).collect(Collectors.toList());
-
-                Object[] arguments = new Object[argumentExpressions.size()];
-
-                return new Consumer<Object[]>() {
-                    @Override
-                    public void accept(Object[] args) {
-                        List<Cell> argumentCells = argumentExpressions.stream().map(x -> x.createValueCell(args)).collect(Collectors.toList());
-                        List<Binding> argumentBindings = IntStream.range(0, argumentExpressions.size()).mapToObj(i -> {
-                            return argumentCells.get(i).consume(x -> {
-                                arguments[i] = x;
-                                update();
-                            });
-                        }).collect(Collectors.toList());
-
-                        Binding binding = () -> {
-                            argumentBindings.forEach(x -> x.remove());
-                            graphicsAllocation.remove();
-                        };
-
-                        self.addBinding(binding);
-                    }
-
-                    private Allocation<Consumer<Graphics>> graphicsAllocation;
-
-                    private void update() {
-                        if(Arrays.asList(arguments).stream().allMatch(x -> x != null)) {
-                            if(graphicsAllocation == null)
-                                graphicsAllocation = createGraphicsConsumer();
-
-                            Class<?>[] parameterTypes = Arrays.asList(arguments).stream().map(x -> x.getClass()).toArray(s -> new Class<?>[s]);
-                            BiConsumer<Graphics, Object[]> renderer = rendererMap.resolve(name, parameterTypes);
-
-                            graphicsAllocation.set(graphics -> {
-                                renderer.accept(graphics, arguments);
-                            });
-                        }
-                    }
-                };
-            }
-
-            @Override
-            public Consumer<Object[]> visitConstructorDefinition(@NotNull LigoParser.ConstructorDefinitionContext ctx) {
-                String name = ctx.ID().getText();
-
-                // Cell constructor definition
-                return args -> {
-                    Supplier<Cell> constructor = () -> {
-                        DictCell obj = new DictCell(name);
-
-                        ctx.object().statement().forEach(x -> {
-                            Consumer<Object[]> statement = parseStatement(x, obj, depth);
-                            statement.accept(args);
-                        });
-
-                        return obj;
-                    };
-                    constructorMap.define(name, constructor);
-                };
-            }
-
-            @Override
-            public Consumer<Object[]> visitFunctionDefinition(@NotNull LigoParser.FunctionDefinitionContext ctx) {
-                String name = ctx.ID().getText();
-                int functionDepth = depth + 1;
-
-                ArrayList<VariableInfo> functionLocals = new ArrayList<>();
-                if (ctx.parameters() != null)
-                    functionLocals.addAll(ctx.parameters().ID().stream().map(x -> new VariableInfo(Object.class, x.getText(), 0)).collect(Collectors.toList()));
-
-                ParserRuleContext bodyTree = ctx.expression();
-
-                Expression bodyCell = parseExpression(bodyTree, self, functionDepth);
-
-                // Compare in relation to the given function depth
-                Stream<VariableInfo> parameters = functionLocals.stream().filter(x -> x.depth == functionDepth);
-                Class<?>[] parameterTypes = parameters.map(x -> x.type).toArray(s -> new Class<?>[s]);
-
-                if(parameterTypes.length > 0) {
-                    return args -> {
-                        Cell<Function<Object[], Object>> cellBody = bodyCell.createFunctionCell(args);
-                        functionMap.define(name, parameterTypes, functionLocals.size(), cellBody);
-                    };
-                } else {
-                    // Cell constructor definition
-                    return args -> {
-                        Supplier<Cell> constructor = () -> bodyCell.createValueCell(args);
-                        constructorMap.define(name, constructor);
-                    };
-                }
-            }
+    // Called on the runtime thread; hands the latest snapshot over to the canvas, followed by the given action
+    private void present(boolean immediately, Runnable then) {
+        DisplayList.Snapshot snapshot = interpreter.snapshot();
+        Rectangle damage = pendingDamage;
+        boolean fullDamage = pendingFullDamage;
+        pendingDamage = null;
+        pendingFullDamage = false;
+
+        SwingUtilities.invokeLater(() -> {
+            this.snapshot = snapshot;
+            Rectangle region = fullDamage ? canvas.getVisibleRect() : damage;
+            if(region != null) {
+                // Frames are painted right away, such that they are done when the next tick is let through
+                if(immediately)
+                    canvas.paintImmediately(region);
+                else
+                    canvas.repaint(region);
+            }
+            then.run();
         });
     }
 
-    private class RendererAllocation implements Allocation<Consumer<Graphics>>, Consumer<Graphics> {
-        Consumer<Graphics> value;
-
-        @Override
-        public void set(Consumer<Graphics> value) {
-            this.value = value;
-            canvas.repaint();
-        }
-
-        @Override
-        public void remove() {
-            graphicsConsumers.remove(this);
-        }
+    private void appendHistory(String code, String errors) {
+        String result;
+        AttributeSet attr;
 
-        @Override
-        public void accept(Graphics graphics) {
-            value.accept(graphics);
+        if (errors.length() == 0) {
+            result = code + "\n";
+            attr = okAttributeSet;
+        } else {
+            result = code + "\n" + errors;
+            attr = notOKAttributeSet;
         }
-    }
-
-    private Allocation<Consumer<Graphics>> createGraphicsConsumer() {
-        RendererAllocation allocation = new RendererAllocation();
-
-        graphicsConsumers.add(allocation);
-
-        return allocation;
-    }
-
-    private ArrayList<Consumer<Graphics>> graphicsConsumers = new ArrayList<>();
-    private FunctionMap functionMap = new FunctionMap();
-    private RendererMap rendererMap = new RendererMap();
-    private ConstructorMap constructorMap = new ConstructorMap();
-
-    private Expression parseExpression(ParserRuleContext ctx, DictCell self, int depth) {
-        return ctx.accept(new LigoBaseVisitor<Expression>() {
-            @Override
-            public Expression visitLeafExpression(@NotNull LigoParser.LeafExpressionContext ctx) {
-                Expression targetExpression = ctx.getChild(0).accept(this);
-                Expression expression = targetExpression;
-
-                // Be sensitive to the address, not the current cell at the address
-                for(LigoParser.IdContext idCtx: ctx.accessChain().id()) {
-                    String id = idCtx.getText();
-                    Expression targetExpressionTmp = targetExpression;
-                    expression = new Expression() {
-                        @Override
-                        public Cell createValueCell(Object[] args) {
-                            Cell target = targetExpressionTmp.createValueCell(args);
-                            return new Cell() {
-                                @Override
-                                public Binding consume(CellConsumer consumer) {
-                                    return target.consume(x -> {
-                                        Object value = ((Map<String, Object>)x).get(id);
-
-                                        consumer.next(value);
-                                    });
-                                }
-                            };
-                        }
-
-                        @Override
-                        public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
-                            Cell<Function<Object[], Object>> target = targetExpressionTmp.createFunctionCell(args);
-                            return new Cell<Function<Object[], Object>>() {
-                                @Override
-                                public Binding consume(CellConsumer<Function<Object[], Object>> consumer) {
-                                    return target.consume(x -> {
-                                        Function<Object[], Object> value = args -> ((Map<String, Object>)x.apply(args)).get(id);
-
-                                        consumer.next(value);
-                                    });
-                                }
-                            };
-                        }
-                    };
-                    targetExpression = expression;
-                }
-
-                return expression;
-            }
-
-            @Override
-            public Expression visitNumber(@NotNull LigoParser.NumberContext ctx) {
-                BigDecimal value = new BigDecimal(ctx.NUMBER().getText());
-                //return args -> new Singleton<>(value);
-                return new Expression() {
-                    @Override
-                    public Cell createValueCell(Object[] args) {
-                        return new Singleton<>(value);
-                    }
-
-                    @Override
-                    public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
-                        return new Singleton<>(eArgs -> value);
-                    }
-                };
-            }
-
-            @Override
-            public Expression visitString(@NotNull LigoParser.StringContext ctx) {
-                String rawValue = ctx.STRING().getText().substring(1, ctx.STRING().getText().length() - 1);
-                String value = rawValue.replace("\\n", "\n").replace("\\r", "\r").replace("\\t", "\t").replace("\\\\", "\\");
-
-                return new Expression() {
-                    @Override
-                    public Cell createValueCell(Object[] args) {
-                        return new Singleton<>(value);
-                    }
-
-                    @Override
-                    public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
-                        return new Singleton<>(eArgs -> value);
-                    }
-                };
-            }
-
-            @Override
-            public Expression visitId(@NotNull LigoParser.IdContext ctx) {
-                String id = ctx.ID().getText();
-
-                return createIdExpression(self, id);
-            }
-
-            @Override
-            public Expression visitAddExpression(@NotNull LigoParser.AddExpressionContext ctx) {
-                Expression lhs = parseExpression(ctx.mulExpression(0), self, depth);
-
-                if (ctx.mulExpression().size() > 1) {
-                    for (int i = 1; i < ctx.mulExpression().size(); i++) {
-                        Expression rhsCell = parseExpression(ctx.mulExpression(i), self, depth);
-
-                        Expression lhsCell = lhs;
-
-                        String operator = ctx.ADD_OP(i - 1).getText();
-
-                        lhs = createFunctionCall(operator, Arrays.asList(lhsCell, rhsCell));
-                    }
-                }
-
-                return lhs;
-            }
-
-            @Override
-            public Expression visitMulExpression(@NotNull LigoParser.MulExpressionContext ctx) {
-                Expression lhs = parseExpression(ctx.leafExpression(0), self, depth);
-
-                if (ctx.leafExpression().size() > 1) {
-                    for (int i = 1; i < ctx.leafExpression().size(); i++) {
-                        Expression rhsCell = parseExpression(ctx.leafExpression(i), self, depth);
-
-                        Expression lhsCell = lhs;
-
-                        String operator = ctx.MUL_OP(i - 1).getText();
-
-                        lhs = createFunctionCall(operator, Arrays.asList(lhsCell, rhsCell));
-                    }
-                }
-
-                return lhs;
-            }
-
-            @Override
-            public Expression visitCall(@NotNull LigoParser.CallContext ctx) {
-                String name = ctx.ID().getText();
-                List<Expression> argumentExpressions = ctx.expression().stream().map(x -> parseExpression(x, self, depth)).collect(Collectors.toList());
-
-                if(argumentExpressions.size() > 0)
-                    return createFunctionCall(name, argumentExpressions);
-                return new Expression() {
-                    @Override
-                    public Cell createValueCell(Object[] args) {
-                        Supplier<Cell> constructor = constructorMap.resolve(name);
-                        return constructor.get();
-                    }
-
-                    @Override
-                    public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
-                        // This shouldn't be supported, right?
-                        return null;
-                    }
-                };
-            }
-        });
-    }
-
-    private Expression createIdExpression(DictCell self, String id) {
-        return new Expression() {
-            @Override
-            public Cell createValueCell(Object[] args) {
-                return self.get(id);
-            }
-
-            @Override
-            public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
-                // Local variable?
-                return null;
-            }
-        };
-    }
-
-    private static final String MACRO_COPY = "copy";
-
-    private Expression createFunctionCall(String name, List<Expression> argumentExpressions) {
-        // Is macro?
-
-        if(name.equals(MACRO_COPY)) {
-            return new Expression() {
-                @Override
-                public Cell createValueCell(Object[] args) {
-                    Cell arg1 = argumentExpressions.get(0).createValueCell(args);
-
-                    return new Cell() {
-                        private Binding binding;
-
-                        @Override
-                        public Binding consume(CellConsumer consumer) {
-                            binding = arg1.consume(value -> {
-                                consumer.next(value);
-                            });
-
-                            binding.remove();
-
-                            /*
-
-                            Should be something like:
-
-                            Channel channel = arg1.createChannel();
-                            channel.consume(value -> {
-                                consumer.next(value);
-                                channel.remove();
-                            });
-
-                            or perhaps:
-
-                            Binding binding = arg1.consume(value -> {
-                                consumer.next(value);
-                                binding.remove();
-                            });
-                            binding.startConsumption();
-
-                            "Dual-bindings2?
-
-                            A binding could be supplied to the consumer, as well as to the call-site:
-
-                            Binding binding = arg1.consume((binding, value) -> {
-                                consumer.next(value);
-                                binding.remove();
-                            });
-
-                            */
-
-                            return () -> { };
-                        }
-                    };
-                }
 
+        try {
+            consoleHistory.getDocument().insertString(0, result, attr);
+            consoleHistory.getDocument().insertString(result.length(), "\n", separatorAttributeSet);
+            consoleHistory.getHighlighter().addHighlight(result.length(), result.length() + 1, new Highlighter.HighlightPainter() {
                 @Override
-                public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
-                    return null;
+                public void paint(Graphics g, int offs0, int offs1, Shape bounds, JTextComponent c) {
+                    Rectangle r = null;
+                    try {
+                        r = c.modelToView(offs0);
+                    } catch (BadLocationException e) {
+                        e.printStackTrace();
+                    }
+                    g.setColor(new Color(220, 220, 220));
+                    g.fillRect(0, r.y, c.getWidth(), r.height);
                 }
-            };
+            });
+        } catch (BadLocationException e1) {
+            e1.printStackTrace();
         }
-
-        Object[] arguments = new Object[argumentExpressions.size()];
-
-        return new Expression() {
-            @Override
-            public Cell createValueCell(Object[] args) {
-                return new Cell() {
-                    @Override
-                    public Binding consume(CellConsumer consumer) {
-                        return new Binding() {
-                            FunctionMap.GenericFunction genericFunction = functionMap.getGenericFunction(new FunctionMap.GenericSelector(name, argumentExpressions.size()));
-                            Binding genericFunctionBinding = genericFunction.consume(f -> {
-                                this.functions = f;
-                                update();
-                            });
-                            Map<FunctionMap.SpecificSelector, FunctionMap.SpecificFunctionInfo> functions;
-                            List<Cell> argumentCells = argumentExpressions.stream().map(x -> x.createValueCell(args)).collect(Collectors.toList());
-                            List<Binding> argumentBindings = IntStream.range(0, argumentExpressions.size()).mapToObj(i -> {
-                                return argumentCells.get(i).consume(x -> {
-                                    arguments[i] = x;
-                                    update();
-                                });
-                            }).collect(Collectors.toList());
-
-                            @Override
-                            public void remove() {
-                                argumentBindings.forEach(x -> x.remove());
-                                genericFunctionBinding.remove();
-                            }
-
-                            private void update() {
-                                if(Arrays.asList(arguments).stream().allMatch(x -> x != null)) {
-                                    Object[] callArgs = arguments;
-                                    Class<?>[] parameterTypes = Arrays.asList(callArgs).stream().map(x -> x.getClass()).toArray(s -> new Class<?>[callArgs.length]);
-
-                                    if(functions != null) {
-                                        FunctionMap.SpecificFunctionInfo function = FunctionMap.GenericFunction.resolve(functions, parameterTypes);
-
-                                        if(function != null) {
-                                            Object[] locals = new Object[function.localCount];
-                                            System.arraycopy(callArgs, 0, locals, 0, callArgs.length);
-
-                                            Object next = function.body.apply(locals);
-                                            consumer.next(next);
-                                        }
-                                    }
-                                }
-                            }
-                        };
-                    }
-                };
-            }
-
-            @Override
-            public Cell<Function<Object[], Object>> createFunctionCell(Object[] args) {
-                return null;
-            }
-        };
     }
 }
@@ -0,0 +1,330 @@
+package ligo;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Instrumentation of propagation, dispatch and paint; while disabled, the hot paths only read the flag
+public class Metrics {
+    public static final String OBJECT_NAME = "ligo:type=Metrics";
+
+    static volatile boolean enabled;
+
+    // Counts per power of two bucket, such that bucket i holds values in [2^(i-1), 2^i)
+    public static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        public void record(long value) {
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(value, 0)));
+        }
+
+        public long[] getBuckets() {
+            long[] counts = new long[buckets.length()];
+            for(int i = 0; i < counts.length; i++)
+                counts[i] = buckets.get(i);
+            return counts;
+        }
+
+        public long getCount() {
+            long count = 0;
+            for(int i = 0; i < buckets.length(); i++)
+                count += buckets.get(i);
+            return count;
+        }
+
+        // Upper bound of the bucket holding the given percentile
+        public long getPercentile(double percentile) {
+            long[] counts = getBuckets();
+            long total = 0;
+            for(long count: counts)
+                total += count;
+            if(total == 0)
+                return 0;
+
+            long rank = (long)Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank && counts[i] > 0)
+                    return i == 0 ? 0 : (1L << i) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        public void reset() {
+            for(int i = 0; i < buckets.length(); i++)
+                buckets.set(i, 0);
+        }
+    }
+
+    @Name("ligo.PropagationTurn")
+    @Label("Propagation Turn")
+    @Category("Ligo")
+    public static class TurnEvent extends Event {
+        @Label("Nodes")
+        public int nodes;
+        @Label("Notifications")
+        public long notifications;
+    }
+
+    @Name("ligo.Paint")
+    @Label("Paint")
+    @Category("Ligo")
+    public static class PaintEvent extends Event {
+        @Label("Commands")
+        public int commands;
+        @Label("Replayed")
+        public int replayed;
+    }
+
+    // Measures one turn of the propagator from its creation on
+    static class Turn {
+        private final TurnEvent event = new TurnEvent();
+        private final long start = System.nanoTime();
+        private final long startNotifications = notifications.sum();
+
+        Turn() {
+            event.begin();
+        }
+
+        void end(int nodes) {
+            // Flushing an empty queue is no turn
+            if(nodes == 0)
+                return;
+
+            long turnNotifications = notifications.sum() - startNotifications;
+            turn(nodes, turnNotifications, System.nanoTime() - start);
+
+            event.end();
+            if(event.shouldCommit()) {
+                event.nodes = nodes;
+                event.notifications = turnNotifications;
+                event.commit();
+            }
+        }
+    }
+
+    public interface MetricsMXBean {
+        boolean isEnabled();
+        void setEnabled(boolean enabled);
+        long getTurns();
+        long getNodesRun();
+        long getNotifications();
+        long getTurnLatencyPercentile(double percentile);
+        long[] getTurnLatencyHistogram();
+        long[] getTurnNodeHistogram();
+        long[] getTurnNotificationHistogram();
+        long getResolutions();
+        long getResolutionCacheHits();
+        long getCallSiteHits();
+        long getCallSiteMisses();
+        long getMemoHits();
+        long getMemoMisses();
+        long getCutOffs();
+        long getLiveBindings();
+        long getLiveDicts();
+        long getPaints();
+        long getPaintLatencyPercentile(double percentile);
+        Map<String, Long> getPaintTimes();
+        void reset();
+    }
+
+    static final LongAdder turns = new LongAdder();
+    static final LongAdder nodesRun = new LongAdder();
+    static final LongAdder notifications = new LongAdder();
+    static final LongAdder resolutions = new LongAdder();
+    static final LongAdder resolutionCacheHits = new LongAdder();
+    static final LongAdder callSiteHits = new LongAdder();
+    static final LongAdder callSiteMisses = new LongAdder();
+    static final LongAdder memoHits = new LongAdder();
+    static final LongAdder memoMisses = new LongAdder();
+    static final LongAdder paints = new LongAdder();
+    // Updates not propagated since the value was the same as before
+    static final LongAdder cutOffs = new LongAdder();
+    static final Histogram turnLatency = new Histogram();
+    static final Histogram turnNodes = new Histogram();
+    static final Histogram turnNotifications = new Histogram();
+    static final Histogram paintLatency = new Histogram();
+    // Replay nanoseconds per kind of command
+    static final ConcurrentHashMap<Class<?>, LongAdder> paintTimes = new ConcurrentHashMap<>();
+
+    private static boolean registered;
+
+    static {
+        if(Boolean.getBoolean("ligo.metrics"))
+            setEnabled(true);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Enabling also exposes the metrics over JMX
+    public static void setEnabled(boolean enabled) {
+        if(enabled)
+            register();
+        Metrics.enabled = enabled;
+    }
+
+    public static synchronized void register() {
+        if(registered)
+            return;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new MXBean(), new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void turn(int nodes, long notificationCount, long nanos) {
+        turns.increment();
+        nodesRun.add(nodes);
+        turnLatency.record(nanos);
+        turnNodes.record(nodes);
+        turnNotifications.record(notificationCount);
+    }
+
+    static void paint(Class<?> commandClass, long nanos) {
+        paintTimes.computeIfAbsent(commandClass, c -> new LongAdder()).add(nanos);
+    }
+
+    public static Map<String, Long> getPaintTimes() {
+        LinkedHashMap<String, Long> times = new LinkedHashMap<>();
+        paintTimes.forEach((c, nanos) -> times.put(c.getSimpleName(), nanos.sum()));
+        return times;
+    }
+
+    public static void reset() {
+        for(LongAdder adder: new LongAdder[]{turns, nodesRun, notifications, resolutions, resolutionCacheHits, callSiteHits, callSiteMisses, memoHits, memoMisses, paints, cutOffs})
+            adder.reset();
+        for(Histogram histogram: new Histogram[]{turnLatency, turnNodes, turnNotifications, paintLatency})
+            histogram.reset();
+        paintTimes.clear();
+    }
+
+    private static class MXBean implements MetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public long getTurns() {
+            return turns.sum();
+        }
+
+        @Override
+        public long getNodesRun() {
+            return nodesRun.sum();
+        }
+
+        @Override
+        public long getNotifications() {
+            return notifications.sum();
+        }
+
+        @Override
+        public long getTurnLatencyPercentile(double percentile) {
+            return turnLatency.getPercentile(percentile);
+        }
+
+        @Override
+        public long[] getTurnLatencyHistogram() {
+            return turnLatency.getBuckets();
+        }
+
+        @Override
+        public long[] getTurnNodeHistogram() {
+            return turnNodes.getBuckets();
+        }
+
+        @Override
+        public long[] getTurnNotificationHistogram() {
+            return turnNotifications.getBuckets();
+        }
+
+        @Override
+        public long getResolutions() {
+            return resolutions.sum();
+        }
+
+        @Override
+        public long getResolutionCacheHits() {
+            return resolutionCacheHits.sum();
+        }
+
+        @Override
+        public long getCallSiteHits() {
+            return callSiteHits.sum();
+        }
+
+        @Override
+        public long getCallSiteMisses() {
+            return callSiteMisses.sum();
+        }
+
+        @Override
+        public long getMemoHits() {
+            return memoHits.sum();
+        }
+
+        @Override
+        public long getMemoMisses() {
+            return memoMisses.sum();
+        }
+
+        @Override
+        public long getCutOffs() {
+            return cutOffs.sum();
+        }
+
+        @Override
+        public long getLiveBindings() {
+            return ConsumerList.getLiveCount();
+        }
+
+        @Override
+        public long getLiveDicts() {
+            return DictCell.getLiveCount();
+        }
+
+        @Override
+        public long getPaints() {
+            return paints.sum();
+        }
+
+        @Override
+        public long getPaintLatencyPercentile(double percentile) {
+            return paintLatency.getPercentile(percentile);
+        }
+
+        @Override
+        public Map<String, Long> getPaintTimes() {
+            return Metrics.getPaintTimes();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
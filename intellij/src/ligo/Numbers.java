@@ -0,0 +1,103 @@
+package ligo;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+public class Numbers {
+    public static Number parse(String text) {
+        if(text.indexOf('.') == -1) {
+            try {
+                return Long.valueOf(text);
+            } catch (NumberFormatException e) {
+                return new BigDecimal(text);
+            }
+        }
+
+        return Double.valueOf(text);
+    }
+
+    // Long operations are exact; results that overflow are promoted to BigDecimal
+
+    public static Number add(long lhs, long rhs) {
+        long result = lhs + rhs;
+        if(((lhs ^ result) & (rhs ^ result)) < 0)
+            return BigDecimal.valueOf(lhs).add(BigDecimal.valueOf(rhs));
+        return result;
+    }
+
+    public static Number subtract(long lhs, long rhs) {
+        long result = lhs - rhs;
+        if(((lhs ^ rhs) & (lhs ^ result)) < 0)
+            return BigDecimal.valueOf(lhs).subtract(BigDecimal.valueOf(rhs));
+        return result;
+    }
+
+    public static Number multiply(long lhs, long rhs) {
+        try {
+            return Math.multiplyExact(lhs, rhs);
+        } catch (ArithmeticException e) {
+            return BigDecimal.valueOf(lhs).multiply(BigDecimal.valueOf(rhs));
+        }
+    }
+
+    public static Number divide(long lhs, long rhs) {
+        if(rhs == 0)
+            throw new ArithmeticException("Division by zero");
+        if(lhs == Long.MIN_VALUE && rhs == -1)
+            return BigDecimal.valueOf(lhs).negate();
+        if(lhs % rhs == 0)
+            return lhs / rhs;
+        return (double)lhs / rhs;
+    }
+
+    public static Number add(Number lhs, Number rhs) {
+        if(isDecimal(lhs) || isDecimal(rhs))
+            return toBigDecimal(lhs).add(toBigDecimal(rhs));
+        if(isFloating(lhs) || isFloating(rhs))
+            return lhs.doubleValue() + rhs.doubleValue();
+        return add(lhs.longValue(), rhs.longValue());
+    }
+
+    public static Number subtract(Number lhs, Number rhs) {
+        if(isDecimal(lhs) || isDecimal(rhs))
+            return toBigDecimal(lhs).subtract(toBigDecimal(rhs));
+        if(isFloating(lhs) || isFloating(rhs))
+            return lhs.doubleValue() - rhs.doubleValue();
+        return subtract(lhs.longValue(), rhs.longValue());
+    }
+
+    public static Number multiply(Number lhs, Number rhs) {
+        if(isDecimal(lhs) || isDecimal(rhs))
+            return toBigDecimal(lhs).multiply(toBigDecimal(rhs));
+        if(isFloating(lhs) || isFloating(rhs))
+            return lhs.doubleValue() * rhs.doubleValue();
+        return multiply(lhs.longValue(), rhs.longValue());
+    }
+
+    public static Number divide(Number lhs, Number rhs) {
+        if(isDecimal(lhs) || isDecimal(rhs))
+            return toBigDecimal(lhs).divide(toBigDecimal(rhs), MathContext.DECIMAL128);
+        if(isFloating(lhs) || isFloating(rhs))
+            return lhs.doubleValue() / rhs.doubleValue();
+        return divide(lhs.longValue(), rhs.longValue());
+    }
+
+    private static boolean isDecimal(Number number) {
+        return number instanceof BigDecimal || number instanceof BigInteger;
+    }
+
+    private static boolean isFloating(Number number) {
+        return number instanceof Double || number instanceof Float;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        if(number instanceof BigDecimal)
+            return (BigDecimal)number;
+        if(number instanceof BigInteger)
+            return new BigDecimal((BigInteger)number);
+        if(isFloating(number))
+            return BigDecimal.valueOf(number.doubleValue());
+        return BigDecimal.valueOf(number.longValue());
+    }
+}
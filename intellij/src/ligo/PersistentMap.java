@@ -0,0 +1,275 @@
+package ligo;
+
+import java.util.*;
+
+public class PersistentMap<K, V> extends AbstractMap<K, V> {
+    private static final Object NOT_FOUND = new Object();
+    private static final PersistentMap EMPTY = new PersistentMap<>(null, 0);
+
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root != null && root.find(0, hash(key), key) != NOT_FOUND;
+    }
+
+    @Override
+    public V get(Object key) {
+        if(root == null)
+            return null;
+        Object value = root.find(0, hash(key), key);
+        return value != NOT_FOUND ? (V)value : null;
+    }
+
+    public PersistentMap<K, V> with(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = (root != null ? root : BitmapNode.EMPTY).with(0, hash(key), key, value, added);
+        if(newRoot == root)
+            return this;
+        return new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    public PersistentMap<K, V> without(K key) {
+        if(root == null)
+            return this;
+        Node newRoot = root.without(0, hash(key), key);
+        if(newRoot == root)
+            return this;
+        return newRoot != null ? new PersistentMap<>(newRoot, size - 1) : empty();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                ArrayList<Entry<K, V>> entries = new ArrayList<>(size);
+                if(root != null)
+                    root.collect(entries);
+                return Collections.unmodifiableList(entries).iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private interface Node {
+        Object find(int shift, int hash, Object key);
+        Node with(int shift, int hash, Object key, Object value, boolean[] added);
+        Node without(int shift, int hash, Object key);
+        <K, V> void collect(List<Entry<K, V>> entries);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    // Pairs are laid out as key, value; a null key means the value is a sub node
+    private static class BitmapNode implements Node {
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        private BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if((bitmap & bit) == 0)
+                return NOT_FOUND;
+            int i = index(bit);
+            Object k = array[2 * i];
+            Object v = array[2 * i + 1];
+            if(k == null)
+                return ((Node)v).find(shift + 5, hash, key);
+            return key.equals(k) ? v : NOT_FOUND;
+        }
+
+        @Override
+        public Node with(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = index(bit);
+
+            if((bitmap & bit) == 0) {
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, 2 * i);
+                newArray[2 * i] = key;
+                newArray[2 * i + 1] = value;
+                System.arraycopy(array, 2 * i, newArray, 2 * i + 2, array.length - 2 * i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+
+            Object k = array[2 * i];
+            Object v = array[2 * i + 1];
+
+            if(k == null) {
+                Node subNode = ((Node)v).with(shift + 5, hash, key, value, added);
+                return subNode == v ? this : replace(2 * i + 1, subNode);
+            }
+
+            if(key.equals(k))
+                return v == value ? this : replace(2 * i + 1, value);
+
+            added[0] = true;
+            Object[] newArray = array.clone();
+            newArray[2 * i] = null;
+            newArray[2 * i + 1] = createNode(shift + 5, k, v, hash, key, value);
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Override
+        public Node without(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if((bitmap & bit) == 0)
+                return this;
+
+            int i = index(bit);
+            Object k = array[2 * i];
+            Object v = array[2 * i + 1];
+
+            if(k == null) {
+                Node subNode = ((Node)v).without(shift + 5, hash, key);
+                if(subNode == v)
+                    return this;
+                if(subNode != null)
+                    return replace(2 * i + 1, subNode);
+            } else if(!key.equals(k)) {
+                return this;
+            }
+
+            if(bitmap == bit)
+                return null;
+
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * i);
+            System.arraycopy(array, 2 * i + 2, newArray, 2 * i, array.length - 2 * i - 2);
+            return new BitmapNode(bitmap ^ bit, newArray);
+        }
+
+        @Override
+        public <K, V> void collect(List<Entry<K, V>> entries) {
+            for(int i = 0; i < array.length; i += 2) {
+                if(array[i] == null)
+                    ((Node)array[i + 1]).collect(entries);
+                else
+                    entries.add(new SimpleImmutableEntry<>((K)array[i], (V)array[i + 1]));
+            }
+        }
+
+        private BitmapNode replace(int index, Object element) {
+            Object[] newArray = array.clone();
+            newArray[index] = element;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = hash(key1);
+            if(hash1 == hash2)
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            boolean[] added = new boolean[1];
+            return EMPTY
+                .with(shift, hash1, key1, value1, added)
+                .with(shift, hash2, key2, value2, added);
+        }
+    }
+
+    private static class CollisionNode implements Node {
+        private final int hash;
+        private final Object[] array;
+
+        private CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for(int i = 0; i < array.length; i += 2) {
+                if(key.equals(array[i]))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return i != -1 ? array[i + 1] : NOT_FOUND;
+        }
+
+        @Override
+        public Node with(int shift, int hash, Object key, Object value, boolean[] added) {
+            if(hash != this.hash) {
+                // Nest this node below a bitmap node that can tell the hashes apart
+                return new BitmapNode(bit(this.hash, shift), new Object[]{null, this})
+                    .with(shift, hash, key, value, added);
+            }
+
+            int i = indexOf(key);
+            if(i != -1) {
+                if(array[i + 1] == value)
+                    return this;
+                Object[] newArray = array.clone();
+                newArray[i + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+
+            Object[] newArray = Arrays.copyOf(array, array.length + 2);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        public Node without(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            if(i == -1)
+                return this;
+            if(array.length == 2)
+                return null;
+
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, array.length - i - 2);
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        public <K, V> void collect(List<Entry<K, V>> entries) {
+            for(int i = 0; i < array.length; i += 2)
+                entries.add(new SimpleImmutableEntry<>((K)array[i], (V)array[i + 1]));
+        }
+    }
+}
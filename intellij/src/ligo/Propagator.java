@@ -0,0 +1,572 @@
+package ligo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class Propagator {
+    // Declared before the instance, which needs it when initialized
+    private static final Comparator<Node> NODE_ORDER = (x, y) ->
+        x.height != y.height ? Integer.compare(x.height, y.height) : Long.compare(x.order, y.order);
+
+    public static final int DEFAULT_PARALLEL_THRESHOLD = Integer.getInteger("ligo.propagator.parallelThreshold", 256);
+
+    private static final Propagator instance = new Propagator();
+
+    public static Propagator getInstance() {
+        return instance;
+    }
+
+    public static abstract class Node {
+        // Nodes of different partitions share no mutable state and may run in parallel; null means serially
+        private final Object partition;
+        private int height;
+        private long order;
+        private boolean queued;
+        private boolean local;
+        // Nodes subscribed to this one, which are kept higher than it
+        private Dependency dependents;
+        private boolean raising;
+        // Sources of other partitions or of none, which may only be committed once partitions are joined
+        private int externalSources;
+        // Causal stacks while tracing: of the node that scheduled this one, and of this one when it last ran
+        private String traceCause;
+        private String traceStack;
+
+        protected Node() {
+            this(instance.getPartition());
+        }
+
+        protected Node(Object partition) {
+            this.partition = partition;
+        }
+
+        protected abstract void run();
+
+        public int getHeight() {
+            return height;
+        }
+
+        public Object getPartition() {
+            return partition;
+        }
+
+        // Frame of the node in traces
+        @Override
+        public String toString() {
+            return getClass().getSimpleName();
+        }
+    }
+
+    // Edge from a node to one subscribed to it, linked into the list of the source such that ending it is cheap
+    private class Dependency implements Binding {
+        private final Node source;
+        private final Node dependent;
+        private final boolean external;
+        private Dependency previous;
+        private Dependency next;
+        private boolean removed;
+
+        private Dependency(Node source, Node dependent) {
+            this.source = source;
+            this.dependent = dependent;
+            external = dependent.partition != null && source.partition != dependent.partition;
+            if(external)
+                addExternalSource(dependent);
+        }
+
+        @Override
+        public void remove() {
+            if(removed)
+                return;
+
+            removed = true;
+            if(external)
+                removeExternalSource(dependent);
+
+            if(previous != null)
+                previous.next = next;
+            else
+                source.dependents = next;
+
+            if(next != null)
+                next.previous = previous;
+        }
+    }
+
+    // Runs the dirty nodes of a single partition on a worker thread
+    private class PartitionRun {
+        private final PriorityQueue<Node> queue = new PriorityQueue<>(NODE_ORDER);
+        private final ArrayList<Node> deferred = new ArrayList<>();
+        private final ArrayList<Integer> deferredHeights = new ArrayList<>();
+        private final ArrayList<String> deferredCauses = new ArrayList<>();
+        // Nodes left for the main queue, as they were at or above the limit or the run failed
+        private final ArrayList<Node> remaining = new ArrayList<>();
+        private Object partition;
+        private Node current;
+        private long order;
+        private int ran;
+        private RuntimeException runtimeFailure;
+        private Error errorFailure;
+
+        private void schedule(Node node) {
+            if(node.partition != partition || (node.queued && !node.local)) {
+                // Other partitions and shared nodes are scheduled once all partitions are joined
+                deferred.add(node);
+                deferredHeights.add(current != null ? current.height : -1);
+                deferredCauses.add(current != null ? current.traceStack : null);
+                // Nodes as high as a deferred node may depend on it, so they wait for it too
+                int height = current != null ? Math.max(node.height, current.height + 1) : node.height;
+                parallelLimit.accumulateAndGet(height, Math::min);
+                return;
+            }
+
+            if(current != null && node.height <= current.height) {
+                if(node.queued) {
+                    queue.remove(node);
+                    node.queued = false;
+                }
+                setHeight(node, current.height + 1);
+            }
+
+            if(!node.queued) {
+                node.queued = true;
+                node.local = true;
+                node.order = order++;
+                if(Tracer.enabled)
+                    node.traceCause = current != null ? current.traceStack : null;
+                queue.add(node);
+            }
+        }
+
+        private long turn;
+
+        private void run(Object partition, List<Node> nodes) {
+            this.partition = partition;
+
+            for(Node node: nodes) {
+                node.queued = true;
+                node.local = true;
+                queue.add(node);
+            }
+
+            try {
+                Node node;
+                while((node = queue.peek()) != null && node.height < parallelLimit.get()) {
+                    queue.poll();
+                    node.queued = false;
+                    node.local = false;
+                    current = node;
+                    try {
+                        if(Tracer.enabled)
+                            runTraced(node, turn);
+                        else
+                            node.run();
+                    } finally {
+                        current = null;
+                    }
+                    ran++;
+                }
+            } finally {
+                Node node;
+                while((node = queue.poll()) != null)
+                    remaining.add(node);
+            }
+        }
+    }
+
+    private class PartitionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Object> partitions;
+        private final List<List<Node>> nodes;
+        private final List<PartitionRun> runs;
+        private final int from;
+        private final int to;
+
+        private PartitionTask(List<Object> partitions, List<List<Node>> nodes, List<PartitionRun> runs, int from, int to) {
+            this.partitions = partitions;
+            this.nodes = nodes;
+            this.runs = runs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > partitionsPerTask) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                    new PartitionTask(partitions, nodes, runs, from, middle),
+                    new PartitionTask(partitions, nodes, runs, middle, to));
+                return;
+            }
+
+            PartitionRun run = new PartitionRun();
+            run.turn = turn;
+            synchronized (runs) {
+                runs.add(run);
+            }
+
+            partitionRun.set(run);
+            int i = from;
+            try {
+                for(; i < to; i++)
+                    run.run(partitions.get(i), nodes.get(i));
+            } catch (RuntimeException e) {
+                run.runtimeFailure = e;
+            } catch (Error e) {
+                run.errorFailure = e;
+            } finally {
+                partitionRun.remove();
+            }
+
+            // Failures are rethrown once all partitions are joined; partitions not run yet are left as they were
+            for(i++; i < to; i++)
+                run.remaining.addAll(nodes.get(i));
+        }
+    }
+
+    private PriorityQueue<Node> queue = new PriorityQueue<>(NODE_ORDER);
+    private Node current;
+    private int transactionDepth;
+    private long order;
+    private long turn;
+    private Object partition;
+    private boolean parallel;
+    // Partitions don't run nodes at or above the lowest height of what may be committed only once they are joined:
+    // nodes depending on other partitions, counted by height, and nodes deferred so far
+    private int[] boundaryHeights = new int[16];
+    private final AtomicInteger parallelLimit = new AtomicInteger(Integer.MAX_VALUE);
+    private final ThreadLocal<PartitionRun> partitionRun = new ThreadLocal<>();
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private int partitionsPerTask = 16;
+
+    public void schedule(Node node) {
+        if(parallel) {
+            partitionRun.get().schedule(node);
+            return;
+        }
+
+        if(current != null && node.height <= current.height) {
+            // A dependency not reported when subscribing; order the node after its source from now on
+            if(node.queued) {
+                queue.remove(node);
+                node.queued = false;
+            }
+            setHeight(node, current.height + 1);
+        }
+
+        if(!node.queued) {
+            node.queued = true;
+            node.order = order++;
+            if(Tracer.enabled)
+                node.traceCause = current != null ? current.traceStack : null;
+            queue.add(node);
+        }
+
+        if(transactionDepth == 0)
+            flush();
+    }
+
+    // Where cells being consumed report the nodes they are driven by; the innermost subscription is last
+    private final ArrayList<Function<Node, Binding>> dependencySinks = new ArrayList<>();
+    private static final Binding NO_DEPENDENCY = () -> { };
+
+    // Cells consumed by the action report their nodes as sources of the subscriber, which is ordered after them
+    public <T> T subscribe(Node subscriber, Supplier<T> action) {
+        return withSink(source -> addDependent(source, subscriber), action);
+    }
+
+    // The subscription cells being consumed now report to, for cells consuming again later on its behalf
+    public Function<Node, Binding> getSubscription() {
+        return dependencySinks.isEmpty() ? null : dependencySinks.get(dependencySinks.size() - 1);
+    }
+
+    public <T> T subscribe(Function<Node, Binding> subscription, Supplier<T> action) {
+        return withSink(subscription != null ? subscription : source -> NO_DEPENDENCY, action);
+    }
+
+    // Cells consumed by the action report their nodes into the given list, for cells relaying them to consumers of their own
+    public <T> T collect(List<Node> sources, Supplier<T> action) {
+        return withSink(source -> {
+            sources.add(source);
+            return () -> sources.remove(source);
+        }, action);
+    }
+
+    private <T> T withSink(Function<Node, Binding> sink, Supplier<T> action) {
+        if(parallel)
+            return action.get();
+
+        dependencySinks.add(sink);
+        try {
+            return action.get();
+        } finally {
+            dependencySinks.remove(dependencySinks.size() - 1);
+        }
+    }
+
+    // Called by a cell driven by the node when consumed; the returned binding ends the dependency
+    public Binding depend(Node source) {
+        if(parallel || dependencySinks.isEmpty())
+            return NO_DEPENDENCY;
+
+        return dependencySinks.get(dependencySinks.size() - 1).apply(source);
+    }
+
+    // Heights are known from subscription on, such that even the first turn runs nodes after all of their sources
+    private Binding addDependent(Node source, Node dependent) {
+        Dependency dependency = new Dependency(source, dependent);
+        dependency.next = source.dependents;
+        if(source.dependents != null)
+            source.dependents.previous = dependency;
+        source.dependents = dependency;
+
+        raise(dependent, source.height + 1);
+        return dependency;
+    }
+
+    private void raise(Node node, int height) {
+        // Cycles stop where they started
+        if(node.height >= height || node.raising)
+            return;
+
+        node.raising = true;
+        try {
+            if(node.queued && !parallel) {
+                queue.remove(node);
+                setHeight(node, height);
+                queue.add(node);
+            } else {
+                setHeight(node, height);
+            }
+
+            for(Dependency dependency = node.dependents; dependency != null; dependency = dependency.next)
+                raise(dependency.dependent, height + 1);
+        } finally {
+            node.raising = false;
+        }
+    }
+
+    private void setHeight(Node node, int height) {
+        if(node.externalSources > 0) {
+            synchronized (this) {
+                countBoundary(node.height, -1);
+                countBoundary(height, 1);
+                node.height = height;
+            }
+        } else {
+            node.height = height;
+        }
+    }
+
+    private synchronized void addExternalSource(Node node) {
+        if(node.externalSources++ == 0)
+            countBoundary(node.height, 1);
+    }
+
+    private synchronized void removeExternalSource(Node node) {
+        if(--node.externalSources == 0)
+            countBoundary(node.height, -1);
+    }
+
+    private void countBoundary(int height, int delta) {
+        if(height >= boundaryHeights.length)
+            boundaryHeights = Arrays.copyOf(boundaryHeights, Math.max(height + 1, boundaryHeights.length * 2));
+        boundaryHeights[height] += delta;
+    }
+
+    // The lowest height above the given one of a node with sources outside of its partition
+    private synchronized int boundaryAbove(int height) {
+        for(int i = height + 1; i < boundaryHeights.length; i++) {
+            if(boundaryHeights[i] > 0)
+                return i;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    public void transaction(Runnable action) {
+        transactionDepth++;
+        try {
+            action.run();
+        } finally {
+            transactionDepth--;
+        }
+
+        if(transactionDepth == 0)
+            flush();
+    }
+
+    // Nodes created by the action belong to the given partition, unless they specify otherwise
+    public void partition(Object partition, Runnable action) {
+        Object outerPartition = this.partition;
+        this.partition = partition;
+        try {
+            action.run();
+        } finally {
+            this.partition = outerPartition;
+        }
+    }
+
+    public Object getPartition() {
+        if(parallel)
+            return partitionRun.get().partition;
+        return current != null && current.partition != null ? current.partition : partition;
+    }
+
+    public void flush() {
+        // Nodes scheduled while a node runs are picked up by the running turn, and those scheduled within a
+        // transaction by the turn committing it
+        if(current != null || parallel || transactionDepth > 0)
+            return;
+
+        Metrics.Turn metricsTurn = Metrics.enabled ? new Metrics.Turn() : null;
+        turn++;
+        Node node;
+        int serialHeight = -1;
+        int ran = 0;
+        while((node = queue.peek()) != null) {
+            if(node.partition != null && node.height != serialHeight && queue.size() >= parallelThreshold) {
+                int parallelRan = runParallel(node.height);
+                if(parallelRan < 0)
+                    serialHeight = node.height;
+                else
+                    ran += parallelRan;
+                continue;
+            }
+
+            queue.poll();
+            node.queued = false;
+            current = node;
+            try {
+                if(Tracer.enabled)
+                    runTraced(node, turn);
+                else
+                    node.run();
+            } finally {
+                current = null;
+            }
+            ran++;
+        }
+
+        if(metricsTurn != null)
+            metricsTurn.end(ran);
+    }
+
+    // Nodes scheduled from outside of any node start a stack of their own
+    private static void runTraced(Node node, long turn) {
+        node.traceStack = node.traceCause != null ? node.traceCause + ";" + node : node.toString();
+        long start = System.nanoTime();
+        try {
+            node.run();
+        } finally {
+            Tracer.record(turn, node.traceStack, System.nanoTime() - start);
+        }
+    }
+
+    // Returns the number of nodes run, or -1 if run serially after all
+    private int runParallel(int height) {
+        // Nodes of the same height don't depend on each other, so partitions of them can run independently
+        LinkedHashMap<Object, List<Node>> partitionNodes = new LinkedHashMap<>();
+        ArrayList<Node> shared = new ArrayList<>();
+        int count = 0;
+
+        while(queue.peek() != null && queue.peek().height == height) {
+            Node node = queue.poll();
+            node.queued = false;
+            if(node.partition != null) {
+                partitionNodes.computeIfAbsent(node.partition, p -> new ArrayList<>()).add(node);
+                count++;
+            } else {
+                shared.add(node);
+            }
+        }
+
+        if(partitionNodes.size() < 2 || count < parallelThreshold) {
+            // Not worth it; requeue in the original order
+            partitionNodes.values().forEach(nodes -> nodes.forEach(this::requeue));
+            shared.forEach(this::requeue);
+            return -1;
+        }
+
+        ArrayList<PartitionRun> runs = new ArrayList<>();
+        parallelLimit.set(boundaryAbove(height));
+        parallel = true;
+        try {
+            pool.invoke(new PartitionTask(new ArrayList<>(partitionNodes.keySet()), new ArrayList<>(partitionNodes.values()), runs, 0, partitionNodes.size()));
+        } finally {
+            parallel = false;
+        }
+
+        for(Node node: shared)
+            requeue(node);
+
+        // Commit what the partitions left or scheduled outside of themselves
+        int ran = 0;
+        RuntimeException runtimeFailure = null;
+        Error errorFailure = null;
+        for(PartitionRun run: runs) {
+            ran += run.ran;
+            if(runtimeFailure == null)
+                runtimeFailure = run.runtimeFailure;
+            if(errorFailure == null)
+                errorFailure = run.errorFailure;
+
+            for(Node node: run.remaining) {
+                node.queued = false;
+                node.local = false;
+                requeue(node);
+            }
+
+            for(int i = 0; i < run.deferred.size(); i++) {
+                Node node = run.deferred.get(i);
+                int sourceHeight = run.deferredHeights.get(i);
+                if(Tracer.enabled && !node.queued)
+                    node.traceCause = run.deferredCauses.get(i);
+                if(node.height <= sourceHeight) {
+                    if(node.queued) {
+                        queue.remove(node);
+                        node.queued = false;
+                    }
+                    setHeight(node, sourceHeight + 1);
+                }
+                requeue(node);
+            }
+        }
+
+        // As when running serially, the nodes not run yet stay queued for the next flush
+        if(errorFailure != null)
+            throw errorFailure;
+        if(runtimeFailure != null)
+            throw runtimeFailure;
+
+        return ran;
+    }
+
+    private void requeue(Node node) {
+        if(!node.queued) {
+            node.queued = true;
+            node.order = order++;
+            queue.add(node);
+        }
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Minimum number of dirty partitioned nodes of the same height before they are run in parallel
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+}
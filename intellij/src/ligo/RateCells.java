@@ -0,0 +1,193 @@
+package ligo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Cells limiting how often the values of a source get through. Timing runs on the shared timer, while values are
+// received and emitted by the executor, which must be the thread owning the cells. Each consumption keeps a state
+// of its own, and values given while consuming pass right away, such that consumers start out with a value.
+public class RateCells {
+    private static abstract class RateBinding<T, R> implements Binding {
+        protected final CellConsumer<R> consumer;
+        protected final Executor executor;
+        protected boolean consuming = true;
+        private boolean removed;
+        private ScheduledFuture<?> future;
+        // Tells timeouts apart from earlier ones that were cancelled too late
+        private long generation;
+        private Binding sourceBinding;
+
+        private RateBinding(CellConsumer<R> consumer, Executor executor) {
+            this.consumer = consumer;
+            this.executor = executor;
+        }
+
+        protected void start(Cell<T> source) {
+            sourceBinding = source.consume(this::next);
+            consuming = false;
+        }
+
+        protected abstract void next(T value);
+
+        protected abstract void elapsed();
+
+        protected void schedule(long delay) {
+            cancel();
+            long scheduledGeneration = generation;
+            future = Scheduler.getTimer().schedule(() -> executor.execute(() -> {
+                if(!removed && scheduledGeneration == generation) {
+                    future = null;
+                    generation++;
+                    elapsed();
+                }
+            }), delay, TimeUnit.MILLISECONDS);
+        }
+
+        protected boolean isScheduled() {
+            return future != null;
+        }
+
+        protected void cancel() {
+            if(future != null) {
+                future.cancel(false);
+                future = null;
+                generation++;
+            }
+        }
+
+        protected void emit(R value) {
+            if(consuming)
+                consumer.next(value);
+            else
+                Propagator.getInstance().transaction(() -> consumer.next(value));
+        }
+
+        @Override
+        public void remove() {
+            removed = true;
+            cancel();
+            if(sourceBinding != null)
+                sourceBinding.remove();
+        }
+    }
+
+    // Emits the latest value once the source has been quiet for the delay
+    public static <T> Cell<T> debounce(Cell<T> source, long delay, Executor executor) {
+        return consumer -> {
+            RateBinding<T, T> binding = new RateBinding<T, T>(consumer, executor) {
+                private T latest;
+
+                @Override
+                protected void next(T value) {
+                    if(consuming) {
+                        emit(value);
+                        return;
+                    }
+
+                    latest = value;
+                    schedule(delay);
+                }
+
+                @Override
+                protected void elapsed() {
+                    emit(latest);
+                    latest = null;
+                }
+            };
+            binding.start(source);
+            return binding;
+        };
+    }
+
+    // Emits a value right away, and then at most once per interval the latest value
+    public static <T> Cell<T> throttleLatest(Cell<T> source, long interval, Executor executor) {
+        return consumer -> {
+            RateBinding<T, T> binding = new RateBinding<T, T>(consumer, executor) {
+                private T latest;
+
+                @Override
+                protected void next(T value) {
+                    if(isScheduled()) {
+                        latest = value;
+                        return;
+                    }
+
+                    emit(value);
+                    if(!consuming)
+                        schedule(interval);
+                }
+
+                @Override
+                protected void elapsed() {
+                    if(latest != null) {
+                        T value = latest;
+                        latest = null;
+                        emit(value);
+                        // The window restarts with what was just emitted
+                        schedule(interval);
+                    }
+                }
+            };
+            binding.start(source);
+            return binding;
+        };
+    }
+
+    // Emits the latest value of the source whenever the clock emits, given it changed since the previous sample
+    public static <T> Cell<T> sample(Cell<T> source, Cell<?> clock) {
+        return consumer -> new Binding() {
+            private T latest;
+            private boolean changed;
+            private Binding sourceBinding = source.consume(value -> {
+                latest = value;
+                changed = true;
+            });
+            private Binding clockBinding = clock.consume(tick -> {
+                if(changed) {
+                    changed = false;
+                    consumer.next(latest);
+                }
+            });
+
+            @Override
+            public void remove() {
+                sourceBinding.remove();
+                clockBinding.remove();
+            }
+        };
+    }
+
+    // Emits the values of each interval as a batch, given there were any
+    public static <T> Cell<List<T>> buffer(Cell<T> source, long interval, Executor executor) {
+        return consumer -> {
+            RateBinding<T, List<T>> binding = new RateBinding<T, List<T>>(consumer, executor) {
+                private ArrayList<T> batch = new ArrayList<>();
+
+                @Override
+                protected void next(T value) {
+                    batch.add(value);
+                    if(consuming) {
+                        elapsed();
+                        return;
+                    }
+
+                    if(!isScheduled())
+                        schedule(interval);
+                }
+
+                @Override
+                protected void elapsed() {
+                    List<T> values = Collections.unmodifiableList(batch);
+                    batch = new ArrayList<>();
+                    emit(values);
+                }
+            };
+            binding.start(source);
+            return binding;
+        };
+    }
+}
@@ -0,0 +1,5 @@
+package ligo;
+
+public interface Renderer {
+    void render(DisplayList.Recorder recorder, Object[] arguments);
+}
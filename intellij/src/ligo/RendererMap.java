@@ -1,46 +1,78 @@
 package ligo;
 
-import java.awt.*;
+import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.function.BiConsumer;
-import java.util.function.Consumer;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 public class RendererMap {
-    private Hashtable<Selector, BiConsumer<Graphics, Object[]>> renderers = new Hashtable<>();
+    private Hashtable<Selector, Renderer> renderers = new Hashtable<>();
+    // Per name and arity, selectors ordered such that no selector succeeds a more general one
+    private Hashtable<FunctionMap.GenericSelector, ArrayList<Selector>> index = new Hashtable<>();
+    private Hashtable<Selector, Renderer> resolutions = new Hashtable<>();
 
-    public void define(String name, Class<?>[] parameterTypes, BiConsumer<Graphics, Object[]> renderer) {
-        renderers.put(new Selector(name, parameterTypes), renderer);
+    public void define(String name, Class<?>[] parameterTypes, Renderer renderer) {
+        Selector selector = new Selector(name, parameterTypes);
+
+        if(renderers.put(selector, renderer) == null) {
+            FunctionMap.GenericSelector genericSelector = new FunctionMap.GenericSelector(name, parameterTypes.length);
+            ArrayList<Selector> selectors = index.get(genericSelector);
+            if(selectors == null) {
+                selectors = new ArrayList<>();
+                index.put(genericSelector, selectors);
+            }
+
+            int insertionIndex = selectors.size();
+            for(int i = 0; i < selectors.size(); i++) {
+                if(isApplicable(selectors.get(i).parameterTypes, parameterTypes)) {
+                    insertionIndex = i;
+                    break;
+                }
+            }
+            selectors.add(insertionIndex, selector);
+        }
+
+        resolutions.clear();
     }
 
-    public <P0> void define(String name, Class<P0> param1, BiConsumer<Graphics, P0> renderer) {
-        define(name, new Class<?>[]{param1}, (graphics, args) -> renderer.accept(graphics, (P0) args[0]));
+    public <P0> void define(String name, Class<P0> param1, BiConsumer<DisplayList.Recorder, P0> renderer) {
+        define(name, new Class<?>[]{param1}, (recorder, args) -> renderer.accept(recorder, (P0) args[0]));
     }
 
-    public <P0, P1, P2> void define(String name, Class<P0> param1, Class<P1> param2, Class<P2> param3, QuadConsumer<Graphics, P0, P1, P2> renderer) {
-        define(name, new Class<?>[]{param1, param2, param3}, (graphics, args) -> renderer.accept(graphics, (P0) args[0], (P1) args[1], (P2) args[2]));
+    public <P0, P1, P2> void define(String name, Class<P0> param1, Class<P1> param2, Class<P2> param3, QuadConsumer<DisplayList.Recorder, P0, P1, P2> renderer) {
+        define(name, new Class<?>[]{param1, param2, param3}, (recorder, args) -> renderer.accept(recorder, (P0) args[0], (P1) args[1], (P2) args[2]));
     }
 
-    public <P0, P1, P2, P3> void define(String name, Class<P0> param1, Class<P1> param2, Class<P2> param3, Class<P3> param4, QuinConsumer<Graphics, P0, P1, P2, P3> renderer) {
-        define(name, new Class<?>[]{param1, param2, param3, param4}, (graphics, args) -> renderer.accept(graphics, (P0) args[0], (P1) args[1], (P2) args[2], (P3) args[3]));
+    public <P0, P1, P2, P3> void define(String name, Class<P0> param1, Class<P1> param2, Class<P2> param3, Class<P3> param4, QuinConsumer<DisplayList.Recorder, P0, P1, P2, P3> renderer) {
+        define(name, new Class<?>[]{param1, param2, param3, param4}, (recorder, args) -> renderer.accept(recorder, (P0) args[0], (P1) args[1], (P2) args[2], (P3) args[3]));
     }
 
-    public BiConsumer<Graphics, Object[]> resolve(String name, Class<?>[] parameterTypes) {
-        java.util.List<BiConsumer<Graphics, Object[]>> candidates = renderers.entrySet().stream()
-            .filter(x ->
-                x.getKey().name.equals(name) && x.getKey().parameterTypes.length == parameterTypes.length)
-            .filter(x ->
-                IntStream.range(0, parameterTypes.length).allMatch(i ->
-                    x.getKey().parameterTypes[i].isAssignableFrom(parameterTypes[i])))
-            .map(x -> x.getValue())
-            .collect(Collectors.toList());
-
-        if(candidates.size() > 0) {
-            // TODO: Compare candidates; select "most specific".
-            return candidates.get(0);
+    public Renderer resolve(String name, Class<?>[] parameterTypes) {
+        Selector selector = new Selector(name, parameterTypes);
+        Renderer renderer = resolutions.get(selector);
+
+        if(renderer == null) {
+            ArrayList<Selector> selectors = index.get(new FunctionMap.GenericSelector(name, parameterTypes.length));
+
+            if(selectors != null) {
+                // The first applicable selector is the most specific one
+                for(Selector candidate: selectors) {
+                    if(isApplicable(candidate.parameterTypes, parameterTypes)) {
+                        renderer = renderers.get(candidate);
+                        resolutions.put(selector, renderer);
+                        break;
+                    }
+                }
+            }
         }
 
-        return null;
+        return renderer;
+    }
+
+    private static boolean isApplicable(Class<?>[] parameterTypes, Class<?>[] argumentTypes) {
+        for(int i = 0; i < parameterTypes.length; i++) {
+            if(!parameterTypes[i].isAssignableFrom(argumentTypes[i]))
+                return false;
+        }
+        return true;
     }
 }
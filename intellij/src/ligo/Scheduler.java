@@ -0,0 +1,17 @@
+package ligo;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+// One timer thread for everything time-driven in the runtime; tasks hand their work over to the thread owning the cells
+public class Scheduler {
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Ligo timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static ScheduledExecutorService getTimer() {
+        return timer;
+    }
+}
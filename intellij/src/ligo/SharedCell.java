@@ -0,0 +1,59 @@
+package ligo;
+
+import java.util.ArrayList;
+
+// Shares one consumption of a source cell among all of its consumers
+public class SharedCell<T> implements Cell<T> {
+    private final Cell<T> source;
+    private ConsumerList<T> consumers = new ConsumerList<>();
+    private Binding sourceBinding;
+    private boolean connected;
+    private T value;
+    // Nodes driving the source, which consumers are ordered after as if consuming the source themselves
+    private ArrayList<Propagator.Node> sourceNodes = new ArrayList<>();
+
+    public SharedCell(Cell<T> source) {
+        this.source = source;
+    }
+
+    @Override
+    public Binding consume(CellConsumer<T> consumer) {
+        return consume(consumers.add(consumer), consumer);
+    }
+
+    @Override
+    public Binding consumeWeakly(CellConsumer<T> consumer) {
+        return consume(consumers.addWeak(consumer), consumer);
+    }
+
+    private Binding consume(Binding consumerBinding, CellConsumer<T> consumer) {
+        if(!connected) {
+            connected = true;
+            sourceBinding = Propagator.getInstance().collect(sourceNodes, () -> source.consume(value -> {
+                this.value = value;
+                consumers.next(value);
+            }));
+        } else if(value != null) {
+            consumer.next(value);
+        }
+
+        Binding[] dependencies = sourceNodes.stream().map(x -> Propagator.getInstance().depend(x)).toArray(s -> new Binding[s]);
+
+        return () -> {
+            consumerBinding.remove();
+            for(Binding dependency: dependencies)
+                dependency.remove();
+
+            if(consumers.isEmpty() && connected) {
+                connected = false;
+                sourceBinding.remove();
+                sourceBinding = null;
+                value = null;
+            }
+        };
+    }
+
+    public int getConsumerCount() {
+        return consumers.size();
+    }
+}
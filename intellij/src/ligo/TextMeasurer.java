@@ -0,0 +1,121 @@
+package ligo;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Measures text without any component or display; safe to use from any thread
+public class TextMeasurer {
+    public static final int DEFAULT_BOUNDS_CAPACITY = Integer.getInteger("ligo.text.boundsCapacity", 4096);
+
+    private static class BoundsKey {
+        private final Font font;
+        private final String string;
+
+        private BoundsKey(Font font, String string) {
+            this.font = font;
+            this.string = string;
+        }
+
+        @Override
+        public int hashCode() {
+            return font.hashCode() * 31 + string.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(obj instanceof BoundsKey) {
+                BoundsKey objKey = (BoundsKey)obj;
+                return this.font.equals(objKey.font) && this.string.equals(objKey.string);
+            }
+
+            return false;
+        }
+    }
+
+    // Same context as the graphics of an image: identity transform, no antialiasing and integer metrics
+    private final FontRenderContext fontRenderContext = new FontRenderContext(null, false, false);
+    private final Graphics2D graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+    private final ConcurrentHashMap<Font, FontMetrics> fontMetrics = new ConcurrentHashMap<>();
+    private final LinkedHashMap<BoundsKey, Rectangle2D> bounds;
+    private long hits;
+    private long misses;
+
+    public TextMeasurer() {
+        this(DEFAULT_BOUNDS_CAPACITY);
+    }
+
+    public TextMeasurer(int boundsCapacity) {
+        bounds = new LinkedHashMap<BoundsKey, Rectangle2D>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BoundsKey, Rectangle2D> eldest) {
+                return size() > boundsCapacity;
+            }
+        };
+    }
+
+    public FontRenderContext getFontRenderContext() {
+        return fontRenderContext;
+    }
+
+    public FontMetrics getFontMetrics(Font font) {
+        FontMetrics metrics = fontMetrics.get(font);
+
+        if(metrics == null) {
+            // The metrics themselves are immutable, but the graphics handing them out is not
+            synchronized (graphics) {
+                metrics = graphics.getFontMetrics(font);
+            }
+            fontMetrics.putIfAbsent(font, metrics);
+        }
+
+        return metrics;
+    }
+
+    public Rectangle2D getStringBounds(Font font, String string) {
+        BoundsKey key = new BoundsKey(Objects.requireNonNull(font), Objects.requireNonNull(string));
+        Rectangle2D stringBounds;
+
+        synchronized (bounds) {
+            stringBounds = bounds.get(key);
+            if(stringBounds != null)
+                hits++;
+            else
+                misses++;
+        }
+
+        if(stringBounds == null) {
+            stringBounds = font.getStringBounds(string, fontRenderContext);
+            synchronized (bounds) {
+                bounds.put(key, stringBounds);
+            }
+        }
+
+        // Cached bounds are shared, so callers get a copy of their own
+        return (Rectangle2D)stringBounds.clone();
+    }
+
+    public long getHits() {
+        synchronized (bounds) {
+            return hits;
+        }
+    }
+
+    public long getMisses() {
+        synchronized (bounds) {
+            return misses;
+        }
+    }
+
+    public void clear() {
+        fontMetrics.clear();
+        synchronized (bounds) {
+            bounds.clear();
+        }
+    }
+}
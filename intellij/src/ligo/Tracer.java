@@ -0,0 +1,101 @@
+package ligo;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Records which nodes each propagation turn ran, on behalf of which, and for how long; keeps the latest samples only
+public class Tracer {
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("ligo.trace.capacity", 65536);
+
+    static volatile boolean enabled = Boolean.getBoolean("ligo.trace");
+
+    // Ring buffer of samples, each the causal stack of a node run, its turn and self time
+    private static String[] stacks = new String[DEFAULT_CAPACITY];
+    private static long[] turns = new long[DEFAULT_CAPACITY];
+    private static long[] nanos = new long[DEFAULT_CAPACITY];
+    private static int next;
+    private static int size;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Tracer.enabled = enabled;
+    }
+
+    public static synchronized void setCapacity(int capacity) {
+        stacks = new String[capacity];
+        turns = new long[capacity];
+        nanos = new long[capacity];
+        next = 0;
+        size = 0;
+    }
+
+    static synchronized void record(long turn, String stack, long selfNanos) {
+        stacks[next] = stack;
+        turns[next] = turn;
+        nanos[next] = selfNanos;
+        next = (next + 1) % stacks.length;
+        if(size < stacks.length)
+            size++;
+    }
+
+    public static synchronized void clear() {
+        Arrays.fill(stacks, null);
+        next = 0;
+        size = 0;
+    }
+
+    public static synchronized int size() {
+        return size;
+    }
+
+    public static synchronized long getLatestTurn() {
+        return size > 0 ? turns[(next - 1 + stacks.length) % stacks.length] : -1;
+    }
+
+    // Self nanoseconds per causal stack, as of the given turn, oldest stacks first
+    public static synchronized Map<String, Long> getSelfTimes(long fromTurn) {
+        LinkedHashMap<String, Long> selfTimes = new LinkedHashMap<>();
+        int start = (next - size + stacks.length) % stacks.length;
+
+        for(int i = 0; i < size; i++) {
+            int index = (start + i) % stacks.length;
+            if(turns[index] >= fromTurn)
+                selfTimes.merge(stacks[index], nanos[index], Long::sum);
+        }
+
+        return selfTimes;
+    }
+
+    // Self and total nanoseconds per causal stack, where the total includes everything caused below it
+    public static Map<String, long[]> getTimes(long fromTurn) {
+        LinkedHashMap<String, long[]> times = new LinkedHashMap<>();
+
+        getSelfTimes(fromTurn).forEach((stack, selfNanos) -> {
+            times.computeIfAbsent(stack, s -> new long[2])[0] += selfNanos;
+
+            // Every prefix of the stack is an ancestor
+            int end = stack.length();
+            while(end > 0) {
+                times.computeIfAbsent(stack.substring(0, end), s -> new long[2])[1] += selfNanos;
+                end = stack.lastIndexOf(';', end - 1);
+            }
+        });
+
+        return times;
+    }
+
+    // One line per stack with frames separated by semicolons and its self nanoseconds, as read by flame graph tools
+    public static void writeCollapsed(Appendable out) throws IOException {
+        writeCollapsed(out, 0);
+    }
+
+    public static void writeCollapsed(Appendable out, long fromTurn) throws IOException {
+        for(Map.Entry<String, Long> entry: getSelfTimes(fromTurn).entrySet())
+            out.append(entry.getKey()).append(' ').append(Long.toString(entry.getValue())).append('\n');
+    }
+}
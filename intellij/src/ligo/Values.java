@@ -0,0 +1,23 @@
+package ligo;
+
+import java.awt.*;
+import java.math.BigDecimal;
+
+public class Values {
+    // Whether an update from one value to the other can be cut off; only values that compare cheaply are compared by value
+    public static boolean same(Object x, Object y) {
+        if(x == y)
+            return true;
+
+        if(x == null || y == null || x.getClass() != y.getClass())
+            return false;
+
+        if(x instanceof BigDecimal)
+            return ((BigDecimal)x).compareTo((BigDecimal)y) == 0;
+
+        if(x instanceof Long || x instanceof Double || x instanceof String || x instanceof Boolean || x instanceof Color || x instanceof Font)
+            return x.equals(y);
+
+        return false;
+    }
+}
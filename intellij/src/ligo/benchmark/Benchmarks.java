@@ -0,0 +1,15 @@
+package ligo.benchmark;
+
+public class Benchmarks {
+    public static void main(String[] args) {
+        Harness.printHeader();
+
+        PropagationBenchmark.run();
+        FunctionMapBenchmark.run();
+        RendererMapBenchmark.run();
+        DictCellBenchmark.run();
+        ParserBenchmark.run();
+        TextMeasurerBenchmark.run();
+        ConstructorBenchmark.run();
+    }
+}
@@ -0,0 +1,57 @@
+package ligo.benchmark;
+
+import ligo.Binding;
+import ligo.Cell;
+import ligo.ConstructorMap;
+import ligo.Interpreter;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+public class ConstructorBenchmark {
+    private static final String LABEL =
+        "label => {\n" +
+        "  x = 0\n" +
+        "  y = 0\n" +
+        "  string = \"Hello World!\"\n" +
+        "  foreColor = color(\"#FFF\")\n" +
+        "  backColor = color(\"#000\")\n" +
+        "  font = font(\"TimesRoman\", \"B\", 12)\n" +
+        "  setColor(backColor)\n" +
+        "  fillRect(x, y, measureString(font, string).width, measureString(font, string).height)\n" +
+        "  setFont(font)\n" +
+        "  setColor(foreColor)\n" +
+        "  drawString(string, x, y + measureString(font, string).ascent)\n" +
+        "}\n";
+
+    public static void main(String[] args) {
+        Harness.printHeader();
+        run();
+    }
+
+    public static void run() {
+        Interpreter interpreter = new Interpreter();
+        interpreter.run(LABEL);
+        ConstructorMap constructorMap = interpreter.getConstructorMap();
+        Supplier<Cell> label = constructorMap.resolve("label");
+
+        // Consuming and releasing an instance makes it render and then tears its bindings down again
+        Harness.measure("Constructor.instantiate", "constructor=label", () -> {
+            Cell instance = label.get();
+            instance.consume(x -> { }).remove();
+            return instance;
+        });
+
+        for(int count = 10; count <= 1000; count *= 10) {
+            int instanceCount = count;
+
+            // Divide the operations per second by the count for instances per second
+            Harness.measure("Constructor.instantiateBulk", "constructor=label;count=" + count, () -> {
+                List<Binding> bindings = constructorMap.instantiate("label", instanceCount, x -> { });
+                for(Binding binding: bindings)
+                    binding.remove();
+                return bindings;
+            });
+        }
+    }
+}
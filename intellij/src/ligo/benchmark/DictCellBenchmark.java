@@ -0,0 +1,29 @@
+package ligo.benchmark;
+
+import ligo.DictCell;
+import ligo.Singleton;
+
+public class DictCellBenchmark {
+    public static void main(String[] args) {
+        Harness.printHeader();
+        run();
+    }
+
+    public static void run() {
+        for(int slotCount = 10; slotCount <= 100000; slotCount *= 10) {
+            DictCell dict = new DictCell("Benchmark");
+            for(int i = 0; i < slotCount; i++)
+                dict.put("s" + i, new Singleton<>(i));
+
+            // A consumer of the dict itself makes every slot change produce a new version
+            Object[] version = new Object[1];
+            dict.consume(x -> version[0] = x);
+            int[] counter = new int[1];
+
+            Harness.measure("DictCell.version", "slots=" + slotCount, () -> {
+                dict.put("s0", new Singleton<>(counter[0]++));
+                return version[0];
+            });
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ligo.benchmark;
+
+import ligo.FunctionMap;
+
+import java.math.BigDecimal;
+
+public class FunctionMapBenchmark {
+    public static void main(String[] args) {
+        Harness.printHeader();
+        run();
+    }
+
+    public static void run() {
+        Object[] arguments = new Object[]{BigDecimal.ONE, BigDecimal.TEN};
+        Class<?>[] argumentTypes = new Class<?>[]{BigDecimal.class, BigDecimal.class};
+
+        for(int overloadCount = 1; overloadCount <= 100; overloadCount *= 10) {
+            FunctionMap.GenericFunction genericFunction = new FunctionMap.GenericFunction();
+
+            genericFunction.define(argumentTypes, new FunctionMap.SpecificFunctionInfo(2, args -> args[0]));
+            for(int i = 0; i < overloadCount - 1; i++)
+                genericFunction.define(RendererMapBenchmark.parameterTypes(i, 2), new FunctionMap.SpecificFunctionInfo(2, args -> args[1]));
+
+            Harness.measure("GenericFunction.resolve", "overloads=" + overloadCount, () ->
+                genericFunction.resolve(argumentTypes));
+
+            FunctionMap.CallSiteCache callSiteCache = new FunctionMap.CallSiteCache();
+            Harness.measure("CallSiteCache.lookup", "overloads=" + overloadCount, () ->
+                callSiteCache.lookup(genericFunction, arguments));
+        }
+    }
+}
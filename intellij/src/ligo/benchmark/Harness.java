@@ -0,0 +1,54 @@
+package ligo.benchmark;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+public class Harness {
+    private static final long WARMUP_NANOS = Long.getLong("ligo.benchmark.warmupMillis", 500) * 1000000;
+    private static final long MEASUREMENT_NANOS = Long.getLong("ligo.benchmark.measurementMillis", 1000) * 1000000;
+    private static final int SAMPLES = Integer.getInteger("ligo.benchmark.samples", 5);
+
+    // Keeps results reachable such that the measured work isn't eliminated
+    public static volatile Object sink;
+
+    public static void printHeader() {
+        System.out.println("benchmark,params,samples,nsPerOp,nsPerOpError,opsPerSecond");
+    }
+
+    public static void measure(String benchmark, String params, Supplier<Object> operation) {
+        run(operation, WARMUP_NANOS);
+
+        double[] samples = new double[SAMPLES];
+        for(int i = 0; i < SAMPLES; i++)
+            samples[i] = run(operation, MEASUREMENT_NANOS / SAMPLES);
+
+        double mean = 0;
+        for(double sample: samples)
+            mean += sample;
+        mean /= samples.length;
+
+        double variance = 0;
+        for(double sample: samples)
+            variance += (sample - mean) * (sample - mean);
+        double error = samples.length > 1 ? Math.sqrt(variance / (samples.length - 1)) : 0;
+
+        System.out.println(String.format(Locale.ROOT, "%s,%s,%d,%.3f,%.3f,%.1f",
+            benchmark, params, samples.length, mean, error, 1000000000.0 / mean));
+    }
+
+    // Returns nanoseconds per operation
+    private static double run(Supplier<Object> operation, long nanos) {
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+
+        do {
+            for(int i = 0; i < 64; i++)
+                sink = operation.get();
+            operations += 64;
+            elapsed = System.nanoTime() - start;
+        } while(elapsed < nanos);
+
+        return (double)elapsed / operations;
+    }
+}
@@ -0,0 +1,42 @@
+package ligo.benchmark;
+
+import ligo.lang.antlr4.LigoLexer;
+import ligo.lang.antlr4.LigoParser;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+public class ParserBenchmark {
+    private static final String LABEL =
+        "label => {\n" +
+        "  x = 0\n" +
+        "  y = 0\n" +
+        "  string = \"\"\n" +
+        "  font = font(\"TimesRoman\", \"B\", 12)\n" +
+        "  setColor(color(\"#000\"))\n" +
+        "  fillRect(x, y, measureString(font, string).width, measureString(font, string).height)\n" +
+        "  drawString(string, x, y + measureString(font, string).ascent)\n" +
+        "}\n";
+
+    public static void main(String[] args) {
+        Harness.printHeader();
+        run();
+    }
+
+    public static void run() {
+        for(int statementCount = 10; statementCount <= 10000; statementCount *= 10) {
+            StringBuilder code = new StringBuilder(LABEL);
+            for(int i = 0; i < statementCount; i++)
+                code.append("lbl" + i + " = label()\nlbl" + i + ".x = " + i + " * 2 + 1\n");
+            String program = code.toString();
+
+            Harness.measure("LigoLexer.tokenize", "chars=" + program.length(), () -> {
+                CommonTokenStream tokens = new CommonTokenStream(new LigoLexer(new ANTLRInputStream(program)));
+                tokens.fill();
+                return tokens;
+            });
+
+            Harness.measure("LigoParser.program", "chars=" + program.length(), () ->
+                new LigoParser(new CommonTokenStream(new LigoLexer(new ANTLRInputStream(program)))).program());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ligo.benchmark;
+
+import ligo.DictCell;
+import ligo.Interpreter;
+import ligo.Propagator;
+import ligo.Singleton;
+
+
+public class PropagationBenchmark {
+    public static void main(String[] args) {
+        Harness.printHeader();
+        run();
+    }
+
+    public static void run() {
+        for(int length = 1; length <= 1000; length *= 10) {
+            // s0 -> s1 -> ... -> sN, each a call of +
+            StringBuilder code = new StringBuilder("s0 = 0\n");
+            for(int i = 1; i <= length; i++)
+                code.append("s" + i + " = s" + (i - 1) + " + 1\n");
+
+            Interpreter interpreter = new Interpreter();
+            interpreter.run(code.toString());
+            DictCell globals = interpreter.getGlobals();
+            int[] counter = new int[1];
+
+            Harness.measure("Propagation.chain", "length=" + length, () -> {
+                globals.put("s0", new Singleton<>((long)counter[0]++));
+                return globals;
+            });
+        }
+
+        // Wider sums nest the + call sites too deeply for the stack
+        for(int width = 1; width <= 100; width *= 10) {
+            // a fans out to b0..bN, which are all summed up into d
+            StringBuilder code = new StringBuilder("a = 0\n");
+            StringBuilder sum = new StringBuilder("d = 0");
+            for(int i = 0; i < width; i++) {
+                code.append("b" + i + " = a * " + i + "\n");
+                sum.append(" + b" + i);
+            }
+            code.append(sum).append("\n");
+
+            Interpreter interpreter = new Interpreter();
+            interpreter.run(code.toString());
+            DictCell globals = interpreter.getGlobals();
+            int[] counter = new int[1];
+
+            Harness.measure("Propagation.diamond", "width=" + width, () -> {
+                globals.put("a", new Singleton<>((long)counter[0]++));
+                return globals;
+            });
+        }
+
+        for(boolean parallel: new boolean[]{false, true}) {
+            // Redefining f fans out to the call sites of all instances
+            StringBuilder code = new StringBuilder("f => |x| x * 2 + 1\n");
+            code.append("item => {\n  x = 0\n  y = f(x)\n  z = f(y) * f(x + 1)\n}\n");
+            for(int i = 0; i < 1000; i++)
+                code.append("i" + i + " = item()\ni" + i + ".x = " + i + "\n");
+
+            Propagator.getInstance().setParallelThreshold(parallel ? Propagator.DEFAULT_PARALLEL_THRESHOLD : Integer.MAX_VALUE);
+            Interpreter interpreter = new Interpreter();
+            interpreter.run(code.toString());
+            int[] counter = new int[1];
+
+            Harness.measure("Propagation.fanOut", "instances=1000;parallel=" + parallel, () ->
+                interpreter.run("f => |x| x * " + (counter[0]++ % 2 + 2) + " + 1"));
+        }
+
+        Propagator.getInstance().setParallelThreshold(Propagator.DEFAULT_PARALLEL_THRESHOLD);
+    }
+}
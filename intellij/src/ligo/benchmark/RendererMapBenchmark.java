@@ -0,0 +1,89 @@
+package ligo.benchmark;
+
+import ligo.RendererMap;
+import ligo.Renderer;
+
+import java.awt.*;
+import java.math.BigDecimal;
+
+public class RendererMapBenchmark {
+    private static final Class<?>[] TYPES = new Class<?>[] {
+        Object.class, Number.class, Integer.class, Long.class, Double.class,
+        String.class, CharSequence.class, Color.class, Font.class, Comparable.class
+    };
+    // Types of actual arguments, all of which some of the parameter types above accept
+    private static final Class<?>[] ARGUMENT_TYPES = new Class<?>[] {
+        Long.class, Double.class, Integer.class, BigDecimal.class, String.class, StringBuilder.class, Color.class, Font.class
+    };
+    private static final int NAME_COUNT = 16;
+    private static final int QUERY_COUNT = 1024;
+
+    public static void main(String[] args) {
+        Harness.printHeader();
+        run();
+    }
+
+    public static void run() {
+        for(int overloadCount = 10; overloadCount <= 10000; overloadCount *= 10) {
+            RendererMap rendererMap = createRendererMap(overloadCount);
+            String[] names = new String[QUERY_COUNT];
+            Class<?>[][] argumentTypes = new Class<?>[QUERY_COUNT][];
+
+            // Queries vary in name, arity and argument types
+            for(int i = 0; i < QUERY_COUNT; i++) {
+                int arity = 1 + i % 4;
+                names[i] = "renderer" + (i / 4) % NAME_COUNT;
+                argumentTypes[i] = argumentTypes(i * 7919, arity);
+            }
+
+            int[] next = new int[1];
+
+            // Redefining a renderer clears the cache, so each query goes through the index;
+            // measured first, while the cache is small and cheap to clear
+            Renderer renderer = (r, a) -> { };
+            Class<?>[] redefinedTypes = parameterTypes(0, 1);
+            Harness.measure("RendererMap.invalidate", "overloads=" + overloadCount, () -> {
+                rendererMap.define("renderer0", redefinedTypes, renderer);
+                return rendererMap;
+            });
+            Harness.measure("RendererMap.resolveUncached", "overloads=" + overloadCount + ";queries=" + QUERY_COUNT, () -> {
+                rendererMap.define("renderer0", redefinedTypes, renderer);
+                int i = next[0]++ & (QUERY_COUNT - 1);
+                return rendererMap.resolve(names[i], argumentTypes[i]);
+            });
+
+            // Once warmed up, each query is answered by the resolution cache
+            Harness.measure("RendererMap.resolve", "overloads=" + overloadCount + ";queries=" + QUERY_COUNT, () -> {
+                int i = next[0]++ & (QUERY_COUNT - 1);
+                return rendererMap.resolve(names[i], argumentTypes[i]);
+            });
+        }
+    }
+
+    private static RendererMap createRendererMap(int overloadCount) {
+        RendererMap rendererMap = new RendererMap();
+
+        // Spread the overloads over names and arities
+        for(int i = 0; i < overloadCount; i++)
+            rendererMap.define("renderer" + i % NAME_COUNT, parameterTypes(i / (NAME_COUNT * 4), 1 + (i / NAME_COUNT) % 4), (r, a) -> { });
+
+        return rendererMap;
+    }
+
+    static Class<?>[] parameterTypes(int combination, int arity) {
+        return types(TYPES, combination, arity);
+    }
+
+    private static Class<?>[] argumentTypes(int combination, int arity) {
+        return types(ARGUMENT_TYPES, combination, arity);
+    }
+
+    private static Class<?>[] types(Class<?>[] types, int combination, int arity) {
+        Class<?>[] parameterTypes = new Class<?>[arity];
+        for(int j = 0; j < parameterTypes.length; j++) {
+            parameterTypes[j] = types[combination % types.length];
+            combination /= types.length;
+        }
+        return parameterTypes;
+    }
+}
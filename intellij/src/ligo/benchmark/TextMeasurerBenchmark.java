@@ -0,0 +1,29 @@
+package ligo.benchmark;
+
+import ligo.TextMeasurer;
+
+import java.awt.*;
+
+public class TextMeasurerBenchmark {
+    public static void main(String[] args) {
+        Harness.printHeader();
+        run();
+    }
+
+    public static void run() {
+        Font font = new Font("TimesRoman", Font.BOLD, 12);
+
+        for(int distinctStrings = 1; distinctStrings <= 100000; distinctStrings *= 100) {
+            // Beyond the capacity of the bounds cache, most measurements are misses
+            String[] strings = new String[distinctStrings];
+            for(int i = 0; i < distinctStrings; i++)
+                strings[i] = "Label " + i;
+
+            TextMeasurer textMeasurer = new TextMeasurer();
+            int[] counter = new int[1];
+
+            Harness.measure("TextMeasurer.stringBounds", "distinctStrings=" + distinctStrings, () ->
+                textMeasurer.getStringBounds(font, strings[counter[0]++ % strings.length]));
+        }
+    }
+}